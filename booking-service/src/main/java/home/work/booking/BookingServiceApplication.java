@@ -8,11 +8,13 @@ import org.springframework.cloud.client.loadbalancer.LoadBalanced;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Import;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.reactive.function.client.WebClient;
 
 @ComponentScan("home.work")
 @SpringBootApplication
 @EnableDiscoveryClient
+@EnableScheduling
 @Import(value={H2ConsoleAutoConfiguration.class})
 public class BookingServiceApplication {
     public static void main(String[] args) {
@@ -2,9 +2,14 @@ package home.work.booking.controllers;
 
 import home.work.booking.dto.BookingRequest;
 import home.work.booking.dto.BookingResponse;
+import home.work.booking.dto.BookingStatusEvent;
+import home.work.booking.dto.GroupBookingRequest;
 import home.work.booking.services.BookingService;
+import home.work.pagination.CursorPage;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
@@ -12,7 +17,9 @@ import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.net.URI;
 import java.time.LocalDate;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/bookings")
@@ -22,43 +29,68 @@ public class BookingController {
 
     @GetMapping
     @PreAuthorize("hasRole('ADMIN')")
-    public Flux<BookingResponse> getBookings() {
-        return bookingService.getBookings();
+    public Mono<ResponseEntity<List<BookingResponse>>> getBookings(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        CursorPage.checkSize(size);
+        return CursorPage.toResponse(bookingService.getBookings(CursorPage.decode(cursor), size + 1),
+                size, BookingResponse::getId);
     }
 
     @GetMapping("/my")
     @PreAuthorize("hasRole('USER')")
-    public Flux<BookingResponse> getUserBookings(
+    public Mono<ResponseEntity<List<BookingResponse>>> getUserBookings(
             @AuthenticationPrincipal Jwt jwt,
-            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(required = false) String cursor,
             @RequestParam(defaultValue = "10") int size) {
-
-        if (page < 0 || size <= 0 || size > 100) {
-            return Flux.error(new IllegalArgumentException("Invalid page or size"));
-        }
-
-        return bookingService.getUserBookingsWithPagination(jwt.getSubject(), page, size);
+        CursorPage.checkSize(size);
+        return CursorPage.toResponse(bookingService.getUserBookings(jwt.getSubject(), CursorPage.decode(cursor), size + 1),
+                size, BookingResponse::getId);
     }
 
     @PostMapping
     @PreAuthorize("hasRole('USER')")
     public Mono<BookingResponse> createBooking(@AuthenticationPrincipal Jwt jwt,
                                                @RequestBody BookingRequest request) {
-        // Валидация дат
-        if (request.getStartDate() == null || request.getEndDate() == null) {
-            return Mono.error(new IllegalArgumentException("startDate and endDate are required"));
-        }
-        if (!request.getStartDate().isBefore(request.getEndDate())) {
-            return Mono.error(new IllegalArgumentException("startDate must be before endDate"));
-        }
-        if (request.getStartDate().isBefore(LocalDate.now())) {
-            return Mono.error(new IllegalArgumentException("startDate cannot be in the past"));
-        }
+        // С holdId бронь оформляется из удержания пользователя, без подбора и повторной проверки дат
+        return validateDates(request.getStartDate(), request.getEndDate())
+                .then(Mono.defer(() -> request.getHoldId() != null
+                        ? bookingService.createBookingFromHold(
+                                jwt.getSubject(), request.getRoomId(), request.getHoldId(), request.getStartDate(),
+                                request.getEndDate(), request.getRequestId())
+                        : bookingService.createBooking(
+                                jwt.getSubject(), request.getRoomId(), request.getStartDate(),
+                                request.getEndDate(), request.isAutoSelect(), request.getRequestId())
+                ));
+    }
 
-        return bookingService.createBooking(
-                jwt.getSubject(), request.getRoomId(), request.getStartDate(),
-                request.getEndDate(), request.isAutoSelect(), request.getRequestId()
-        );
+    // Асинхронное бронирование: бронь принимается в статусе PENDING, подтверждение в hotel-service идёт в фоне.
+    // Итоговый статус — GET /api/bookings/{id} или поток GET /api/bookings/{id}/events
+    @PostMapping("/async")
+    @PreAuthorize("hasRole('USER')")
+    public Mono<ResponseEntity<BookingResponse>> createBookingAsync(@AuthenticationPrincipal Jwt jwt,
+                                                                    @RequestBody BookingRequest request) {
+        return validateDates(request.getStartDate(), request.getEndDate())
+                .then(Mono.defer(() -> bookingService.createBookingAsync(
+                        jwt.getSubject(), request.getRoomId(), request.getStartDate(),
+                        request.getEndDate(), request.getRequestId()
+                )))
+                .map(booking -> ResponseEntity
+                        .accepted()
+                        .location(URI.create("/api/bookings/" + booking.getId()))
+                        .body(booking));
+    }
+
+    // Групповое бронирование: все номера на одни даты под одним requestId, всё или ничего
+    @PostMapping("/group")
+    @PreAuthorize("hasRole('USER')")
+    public Mono<List<BookingResponse>> createGroupBooking(@AuthenticationPrincipal Jwt jwt,
+                                                          @RequestBody GroupBookingRequest request) {
+        return validateDates(request.getStartDate(), request.getEndDate())
+                .then(Mono.defer(() -> bookingService.createGroupBooking(
+                        jwt.getSubject(), request.getRoomIds(), request.getStartDate(),
+                        request.getEndDate(), request.getRequestId()
+                )));
     }
 
     @GetMapping("/{id}")
@@ -67,10 +99,31 @@ public class BookingController {
         return bookingService.getBooking(id);
     }
 
+    // Поток статуса брони (SSE или NDJSON): текущий статус, затем изменения до CONFIRMED или CANCELLED
+    @GetMapping(value = "/{id}/events", produces = {MediaType.TEXT_EVENT_STREAM_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    @PreAuthorize("hasRole('USER')")
+    public Flux<BookingStatusEvent> bookingEvents(@PathVariable Long id) {
+        return bookingService.statusEvents(id);
+    }
+
     @DeleteMapping("/{id}")
     @PreAuthorize("hasRole('USER')")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public Mono<Void> deleteBooking(@PathVariable Long id) {
         return bookingService.deleteBooking(id);
     }
+
+    // Валидация дат
+    private static Mono<Void> validateDates(LocalDate start, LocalDate end) {
+        if (start == null || end == null) {
+            return Mono.error(new IllegalArgumentException("startDate and endDate are required"));
+        }
+        if (!start.isBefore(end)) {
+            return Mono.error(new IllegalArgumentException("startDate must be before endDate"));
+        }
+        if (start.isBefore(LocalDate.now())) {
+            return Mono.error(new IllegalArgumentException("startDate cannot be in the past"));
+        }
+        return Mono.empty();
+    }
 }
@@ -3,13 +3,15 @@ package home.work.booking.controllers;
 import home.work.booking.dto.UserRequest;
 import home.work.booking.dto.UserResponse;
 import home.work.booking.services.UserService;
+import home.work.pagination.CursorPage;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 @RestController
 @RequestMapping("/api/users")
 @RequiredArgsConstructor
@@ -24,8 +26,12 @@ public class UserController {
 
     @GetMapping
     @PreAuthorize("hasRole('ADMIN')")
-    Flux<UserResponse> list() {
-        return userService.getUsers();
+    Mono<ResponseEntity<List<UserResponse>>> list(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        CursorPage.checkSize(size);
+        return CursorPage.toResponse(userService.getUsers(CursorPage.decode(cursor), size + 1),
+                size, UserResponse::getId);
     }
 
     @PostMapping
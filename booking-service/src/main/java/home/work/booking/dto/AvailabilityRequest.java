@@ -6,6 +6,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDate;
+import java.util.List;
 
 @Data
 @Builder
@@ -15,5 +16,8 @@ public class AvailabilityRequest {
     private LocalDate startDate;
     private LocalDate endDate;
     private String bookingId;
+    private List<String> bookingIds;
     private String requestId;
+    private List<String> requestIds; // requestId каждой брони из bookingIds, в том же порядке
+    private String userName; // владелец удержания при подтверждении holds/{holdId}/confirm
 }
@@ -11,6 +11,7 @@ public class BookingRequest {
     private LocalDate endDate;
     private Boolean autoSelect;
     private String requestId;
+    private Long holdId; // удержание номера в hotel-service (POST /api/rooms/{id}/holds), превращаемое в бронь
 
     public Boolean isAutoSelect() {
         return autoSelect;
@@ -0,0 +1,26 @@
+package home.work.booking.dto;
+
+import home.work.booking.entities.Booking;
+import home.work.booking.entities.BookingStatus;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+@Builder
+public class BookingStatusEvent {
+    private Long bookingId;
+    private Long roomId;
+    private BookingStatus status;
+    private Instant at;
+
+    public static BookingStatusEvent of(Booking booking) {
+        return BookingStatusEvent.builder()
+                .bookingId(booking.getId())
+                .roomId(booking.getRoomId())
+                .status(booking.getStatus())
+                .at(Instant.now())
+                .build();
+    }
+}
@@ -0,0 +1,21 @@
+package home.work.booking.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoomConfirmResult {
+    public enum Status { CONFIRMED, CONFLICT, ROLLED_BACK }
+
+    private Long roomId;
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private String bookingId;
+    private Status status;
+    private String message;
+}
@@ -0,0 +1,19 @@
+package home.work.booking.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoomConfirmation {
+    private Long roomId;
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private String bookingId;
+}
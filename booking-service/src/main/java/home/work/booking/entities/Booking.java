@@ -19,4 +19,6 @@ public class Booking {
     private LocalDate endDate;
     private BookingStatus status;
     private LocalDate createdAt;
+    // requestId группового бронирования; null для одиночных броней
+    private String groupRequestId;
 }
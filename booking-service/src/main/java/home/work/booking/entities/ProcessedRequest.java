@@ -9,6 +9,7 @@ import java.time.LocalDateTime;
 
 @Data
 @Builder
+// processed_requests — представление по корзинам; запись идёт в таблицу корзины (см. ProcessedRequestBuckets)
 @Table("processed_requests")
 public class ProcessedRequest {
     @Id
@@ -37,6 +37,18 @@ public class BookingExceptionHandler {
         return Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).body(error));
     }
 
+    @ExceptionHandler(BookingNotFoundException.class)
+    public Mono<ResponseEntity<ErrorResponse>> handleBookingNotFound(BookingNotFoundException ex, ServerWebExchange exchange) {
+        ErrorResponse error = new ErrorResponse(
+                HttpStatus.NOT_FOUND.value(),
+                "Booking Not Found",
+                ex.getMessage(),
+                exchange.getRequest().getPath().value(),
+                LocalDateTime.now()
+        );
+        return Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).body(error));
+    }
+
     @ExceptionHandler(UserExistsException.class)
     public Mono<ResponseEntity<ErrorResponse>> handleUserExists(UserExistsException ex, ServerWebExchange exchange) {
         ErrorResponse error = new ErrorResponse(
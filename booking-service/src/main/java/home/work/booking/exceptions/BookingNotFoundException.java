@@ -0,0 +1,7 @@
+package home.work.booking.exceptions;
+
+public class BookingNotFoundException extends RuntimeException {
+    public BookingNotFoundException(Long bookingId) {
+        super("Booking not found with id: " + bookingId);
+    }
+}
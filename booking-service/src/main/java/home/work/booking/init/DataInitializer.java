@@ -34,6 +34,9 @@ public class DataInitializer {
     public void init() {
         // Очистка и создание тестовых данных
         databaseClient.sql("DELETE FROM bookings").fetch().rowsUpdated()
+                .then(databaseClient.sql("DELETE FROM booking_outbox").fetch().rowsUpdated())
+                .then(databaseClient.sql("DELETE FROM compensation_queue").fetch().rowsUpdated())
+                .then(databaseClient.sql("DELETE FROM bookings_archive").fetch().rowsUpdated())
                 .then(databaseClient.sql("DELETE FROM user_roles").fetch().rowsUpdated())
                 .then(databaseClient.sql("DELETE FROM users").fetch().rowsUpdated())
                 .thenMany(
@@ -11,14 +11,26 @@ import reactor.core.publisher.Flux;
 public interface BookingRepository extends ReactiveCrudRepository<Booking, Long> {
     Flux<Booking> findAllByUserId(Long userId);
 
+    Flux<Booking> findAllByGroupRequestIdOrderById(String groupRequestId);
+
+    // Keyset-пагинация: страница начинается сразу после id из курсора, без OFFSET
     @Query("""
             SELECT * FROM bookings
             WHERE user_id = :userId
+            AND id < :beforeId
             ORDER BY id DESC
-            LIMIT :limit OFFSET :offset
+            LIMIT :limit
             """)
-    Flux<Booking> findAllByUserIdWithPagination(
+    Flux<Booking> findPageByUserId(
             @Param("userId") Long userId,
-            @Param("limit") int limit,
-            @Param("offset") int offset);
+            @Param("beforeId") Long beforeId,
+            @Param("limit") int limit);
+
+    @Query("""
+            SELECT * FROM bookings
+            WHERE id > :afterId
+            ORDER BY id
+            LIMIT :limit
+            """)
+    Flux<Booking> findPage(@Param("afterId") Long afterId, @Param("limit") int limit);
 }
\ No newline at end of file
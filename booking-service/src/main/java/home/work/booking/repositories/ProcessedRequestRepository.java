@@ -1,11 +1,21 @@
 package home.work.booking.repositories;
 
 import home.work.booking.entities.ProcessedRequest;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.transaction.annotation.Transactional;
 import reactor.core.publisher.Mono;
 
+import java.time.LocalDateTime;
+
 @Transactional
 public interface ProcessedRequestRepository extends ReactiveCrudRepository<ProcessedRequest, String> {
-    Mono<Boolean> existsByRequestId(String requestId);
-}
\ No newline at end of file
+    // Только ключи внутри окна идемпотентности: более старые считаются истёкшими, даже если их корзина ещё не очищена
+    @Query("""
+            SELECT * FROM processed_requests
+            WHERE request_id = :requestId
+            AND processed_at > :since
+            """)
+    Mono<ProcessedRequest> findActive(@Param("requestId") String requestId, @Param("since") LocalDateTime since);
+}
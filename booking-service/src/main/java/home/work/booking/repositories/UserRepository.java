@@ -3,6 +3,7 @@ package home.work.booking.repositories;
 import home.work.booking.entities.User;
 import home.work.booking.entities.UserWithRoles;
 import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
@@ -34,12 +35,19 @@ public interface UserRepository extends ReactiveCrudRepository<User, Long> {
             """)
     Mono<UserWithRoles> findByUsernameWithRoles(String username);
 
+    // GROUP_CONCAT только по пользователям страницы
     @Query("""
             SELECT u.id, u.username, u.password,
                    GROUP_CONCAT(ur.role) as roles
-            FROM users u
+            FROM (
+                SELECT id, username, password FROM users
+                WHERE id > :afterId
+                ORDER BY id
+                LIMIT :limit
+            ) u
             LEFT JOIN user_roles ur ON u.id = ur.user_id
             GROUP BY u.id, u.username, u.password
+            ORDER BY u.id
             """)
-    Flux<UserWithRoles> findAllWithRoles();
+    Flux<UserWithRoles> findPageWithRoles(@Param("afterId") Long afterId, @Param("limit") int limit);
 }
@@ -0,0 +1,86 @@
+package home.work.booking.services;
+
+import home.work.compaction.ArchiveCompactor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Фоновое уплотнение bookings: бронирования, закончившиеся раньше чем retention-days назад, переносятся в bookings_archive.
+ * Брони, которые ещё обрабатывает сага (PENDING, запись в outbox) или очередь компенсаций, не трогаются.
+ */
+@Component
+public class BookingCompactor extends ArchiveCompactor<Long> {
+    // Проверяется и при выборе пачки, и при переносе: бронь могла попасть в обработку между ними
+    private static final String SETTLED = """
+            b.status <> 'PENDING'
+            AND NOT EXISTS (SELECT 1 FROM booking_outbox o WHERE o.booking_id = b.id)
+            AND NOT EXISTS (SELECT 1 FROM compensation_queue c WHERE c.booking_id = b.id)
+            """;
+
+    private final DatabaseClient databaseClient;
+    private final int retentionDays;
+
+    public BookingCompactor(DatabaseClient databaseClient,
+                            TransactionalOperator transactionalOperator,
+                            MeterRegistry meterRegistry,
+                            @Value("${booking.compaction.retention-days:90}") int retentionDays,
+                            @Value("${booking.compaction.batch-size:500}") int batchSize) {
+        super("bookings", transactionalOperator, meterRegistry, batchSize);
+        this.databaseClient = databaseClient;
+        this.retentionDays = retentionDays;
+    }
+
+    @Scheduled(initialDelayString = "${booking.compaction.initial-delay:PT1M}",
+            fixedDelayString = "${booking.compaction.interval:PT1H}")
+    public void run() {
+        trigger(LocalDate.now().minusDays(retentionDays));
+    }
+
+    @Override
+    protected Flux<Long> selectBatch(LocalDate cutoff, int batchSize) {
+        return databaseClient.sql("""
+                        SELECT id FROM bookings b
+                        WHERE b.end_date <= :cutoff
+                        AND %s
+                        ORDER BY b.end_date, b.id
+                        LIMIT :batchSize
+                        """.formatted(SETTLED))
+                .bind("cutoff", cutoff)
+                .bind("batchSize", batchSize)
+                .map((row, metadata) -> row.get("id", Long.class))
+                .all();
+    }
+
+    @Override
+    protected Mono<List<Long>> archive(List<Long> ids) {
+        return databaseClient.sql("""
+                        INSERT INTO bookings_archive (id, user_id, room_id, start_date, end_date, status, created_at, group_request_id)
+                        SELECT id, user_id, room_id, start_date, end_date, status, created_at, group_request_id FROM bookings b
+                        WHERE b.id IN (:ids)
+                        AND %s
+                        """.formatted(SETTLED))
+                .bind("ids", ids)
+                .fetch()
+                .rowsUpdated()
+                .thenMany(databaseClient.sql("""
+                                SELECT id FROM OLD TABLE (
+                                    DELETE FROM bookings
+                                    WHERE id IN (:ids)
+                                    AND id IN (SELECT id FROM bookings_archive WHERE id IN (:ids))
+                                )
+                                """)
+                        .bind("ids", ids)
+                        .map((row, metadata) -> row.get("id", Long.class))
+                        .all())
+                .collectList();
+    }
+}
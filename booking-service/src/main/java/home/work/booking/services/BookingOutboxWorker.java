@@ -0,0 +1,99 @@
+package home.work.booking.services;
+
+import home.work.booking.entities.BookingStatus;
+import home.work.queue.LeaseQueue;
+import home.work.scheduling.NonOverlappingJob;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.spi.Row;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Обработчик outbox асинхронных бронирований. Забирает готовые записи пачками под аренду (LeaseQueue),
+ * проводит сагу не более workers броней одновременно и удаляет запись после завершения.
+ * Если шаг упал (например, недоступна БД), запись возвращается в очередь с экспоненциальной задержкой,
+ * а после max-attempts неудач откладывается; её бронь остаётся PENDING до разбора.
+ * Новая бронь будит обработчик сразу; периодический опрос подбирает отложенные и брошенные записи.
+ */
+@Component
+public class BookingOutboxWorker extends LeaseQueue<BookingOutboxWorker.OutboxEntry> {
+    private static final Logger log = LoggerFactory.getLogger(BookingOutboxWorker.class);
+
+    private final BookingService bookingService;
+    private final BookingStatusEventBus statusEventBus;
+    private final int workers;
+    private final NonOverlappingJob pollJob = new NonOverlappingJob("booking outbox poll");
+
+    public BookingOutboxWorker(DatabaseClient databaseClient,
+                               BookingService bookingService,
+                               BookingStatusEventBus statusEventBus,
+                               MeterRegistry meterRegistry,
+                               @Value("${booking.outbox.workers:8}") int workers,
+                               @Value("${booking.outbox.batch-size:32}") int batchSize,
+                               @Value("${booking.outbox.lease:PT1M}") Duration lease,
+                               @Value("${booking.outbox.initial-backoff:PT1S}") Duration initialBackoff,
+                               @Value("${booking.outbox.max-backoff:PT5M}") Duration maxBackoff,
+                               @Value("${booking.outbox.max-attempts:20}") int maxAttempts) {
+        super("booking_outbox", "id, booking_id, request_id, attempts", databaseClient, meterRegistry,
+                new Metrics("booking.outbox.processed", "completed", "Outbox entries processed", "booking.outbox.queue"),
+                new Settings(batchSize, lease, initialBackoff, maxBackoff, maxAttempts));
+        this.bookingService = bookingService;
+        this.statusEventBus = statusEventBus;
+        this.workers = workers;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        statusEventBus.subscribe(null)
+                .filter(event -> event.getStatus() == BookingStatus.PENDING)
+                .subscribe(event -> drain().subscribe(
+                        null,
+                        error -> log.warn("Outbox drain failed: {}", String.valueOf(error))
+                ));
+    }
+
+    @Scheduled(initialDelayString = "${booking.outbox.poll-interval:PT1S}",
+            fixedDelayString = "${booking.outbox.poll-interval:PT1S}")
+    public void poll() {
+        pollJob.trigger(() -> drain().then(refreshStats()));
+    }
+
+    @Override
+    protected Mono<Void> process(List<OutboxEntry> entries) {
+        return Flux.fromIterable(entries)
+                .flatMap(entry -> bookingService.resumeBooking(entry.bookingId(), entry.requestId())
+                        .then(complete(List.of(entry)))
+                        .onErrorResume(error -> fail(List.of(entry), error)), workers)
+                .then();
+    }
+
+    @Override
+    protected OutboxEntry toEntry(Row row) {
+        return new OutboxEntry(
+                row.get("id", Long.class),
+                row.get("booking_id", Long.class),
+                row.get("request_id", String.class),
+                row.get("attempts", Integer.class));
+    }
+
+    @Override
+    protected String describe(Collection<OutboxEntry> entries) {
+        return "bookingIds=" + entries.stream().map(OutboxEntry::bookingId).toList()
+                + ", requestIds=" + entries.stream().map(OutboxEntry::requestId).toList();
+    }
+
+    record OutboxEntry(Long id, Long bookingId, String requestId, int attempts) implements LeaseQueue.Entry {
+    }
+}
@@ -2,30 +2,42 @@ package home.work.booking.services;
 
 import home.work.booking.dto.AvailabilityRequest;
 import home.work.booking.dto.BookingResponse;
+import home.work.booking.dto.BookingStatusEvent;
+import home.work.booking.dto.MultiRoomConfirmRequest;
+import home.work.booking.dto.RoomConfirmResult;
+import home.work.booking.dto.RoomConfirmation;
 import home.work.booking.dto.RoomRequest;
 import home.work.booking.entities.Booking;
 import home.work.booking.entities.BookingStatus;
 import home.work.booking.entities.User;
+import home.work.booking.exceptions.BookingNotFoundException;
 import home.work.booking.exceptions.RequestProcessedException;
 import home.work.booking.exceptions.RoomNotAvailableException;
 import home.work.booking.exceptions.UserNotFoundException;
 import home.work.booking.mappers.BookingMapper;
 import home.work.booking.repositories.BookingRepository;
-import home.work.booking.repositories.ProcessedRequestRepository;
 import home.work.booking.repositories.UserRepository;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.util.retry.Retry;
 
 import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
 
 import static home.work.exceptions.ExceptionProcessor.isUniqueConstraintViolation;
 
@@ -36,27 +48,39 @@ public class BookingService {
 
     private final BookingRepository bookingRepository;
     private final UserRepository userRepository;
-    private final ProcessedRequestRepository processedRequestRepository;
+    private final IdempotencyStore idempotencyStore;
+    private final InFlightRequests inFlightRequests;
+    private final ProcessedRequestBuckets processedRequestBuckets;
+    private final BookingStatusEventBus statusEventBus;
     private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
     private final WebClient hotelServiceWebClient;
-    private final JwtService jwtService;
+    private final InternalTokenProvider internalTokenProvider;
+    private final CompensationQueue compensationQueue;
     private final BookingMapper mapper;
 
+    @Value("${booking.auto-select.candidates:5}")
+    private int autoSelectCandidates;
+
+    @Value("${booking.group.max-rooms:20}")
+    private int groupMaxRooms;
+
     public Mono<BookingResponse> getBooking(Long id) {
         return bookingRepository.findById(id).map(mapper::toDto);
     }
 
-    public Flux<BookingResponse> getBookings() {
-        return bookingRepository.findAll().map(mapper::toDto);
+    public Flux<BookingResponse> getBookings(Long afterId, int limit) {
+        return bookingRepository.findPage(afterId != null ? afterId : 0L, limit).map(mapper::toDto);
     }
 
-    public Flux<BookingResponse> getUserBookingsWithPagination(String userName, int page, int size) {
+    // Бронирования пользователя от новых к старым: курсор — id последней показанной брони
+    public Flux<BookingResponse> getUserBookings(String userName, Long beforeId, int limit) {
         return userRepository
                 .findByUsername(userName)
                 .switchIfEmpty(Mono.error(new UserNotFoundException()))
                 .map(User::getId)
                 .flatMapMany(userId ->
-                        bookingRepository.findAllByUserIdWithPagination(userId, size, page * size)
+                        bookingRepository.findPageByUserId(userId, beforeId != null ? beforeId : Long.MAX_VALUE, limit)
                                 .map(mapper::toDto)
                 );
     }
@@ -70,19 +94,45 @@ public class BookingService {
         if (requestId == null || requestId.isBlank()) {
             return Mono.error(new IllegalArgumentException("requestId is required for idempotency"));
         }
-        return processedRequestRepository.existsByRequestId(requestId)
-                .flatMap(exists -> {
-                    if (exists) {
-                        // Уже обрабатывали — возвращаем существующее бронирование
-                        return processedRequestRepository.findById(requestId)
-                                .flatMap(pr -> bookingRepository.findById(pr.getBookingId()))
-                                .switchIfEmpty(Mono.error(new RuntimeException("Inconsistent state: processed request without booking")))
-                                .map(mapper::toDto);
-                    }
+        // Повтор, пришедший во время выполнения первой попытки, получает её результат
+        return inFlightRequests.join("booking:" + requestId, () -> idempotencyStore.findBookingId(requestId)
+                // Уже обрабатывали — возвращаем существующее бронирование
+                .flatMap(bookingId -> bookingRepository.findById(bookingId)
+                        .switchIfEmpty(Mono.error(new RuntimeException("Inconsistent state: processed request without booking")))
+                        .map(mapper::toDto))
+                // Новый запрос — продолжаем создание
+                .switchIfEmpty(Mono.defer(() -> proceedWithNewBooking(userName, roomId, start, end, autoSelect, requestId)))
+                .onErrorResume(RequestProcessedException.class, e -> claimedBooking(requestId, e)));
+    }
 
-                    // Новый запрос — продолжаем создание
-                    return proceedWithNewBooking(userName, roomId, start, end, autoSelect, requestId);
-                });
+    // Ключ уже записан другим экземпляром (или фильтр Блума ошибся): отдаём его бронь, возможно ещё PENDING
+    private Mono<BookingResponse> claimedBooking(String requestId, RequestProcessedException e) {
+        return idempotencyStore.lookup(requestId)
+                .flatMap(bookingRepository::findById)
+                .map(mapper::toDto)
+                .switchIfEmpty(Mono.error(e));
+    }
+
+    // Бронь из удержания: номер и даты уже закреплены за пользователем в hotel-service,
+    // подтверждается именно это удержание (holds/{holdId}/confirm), а не свободные даты номера
+    public Mono<BookingResponse> createBookingFromHold(String userName, Long roomId, Long holdId, LocalDate start, LocalDate end, String requestId) {
+        if (requestId == null || requestId.isBlank()) {
+            return Mono.error(new IllegalArgumentException("requestId is required for idempotency"));
+        }
+        if (roomId == null) {
+            return Mono.error(new IllegalArgumentException("roomId is required for booking from hold"));
+        }
+        return inFlightRequests.join("booking:" + requestId, () -> idempotencyStore.findBookingId(requestId)
+                .flatMap(bookingId -> bookingRepository.findById(bookingId)
+                        .switchIfEmpty(Mono.error(new RuntimeException("Inconsistent state: processed request without booking")))
+                        .map(mapper::toDto))
+                .switchIfEmpty(Mono.defer(() -> userRepository
+                        .findByUsername(userName)
+                        .switchIfEmpty(Mono.error(new UserNotFoundException()))
+                        .flatMap(user -> createAndConfirmBooking(user.getId(), List.of(roomId), start, end, requestId,
+                                booking -> requestHoldConfirmation(booking, holdId, userName, requestId)))
+                        .map(mapper::toDto)))
+                .onErrorResume(RequestProcessedException.class, e -> claimedBooking(requestId, e)));
     }
 
     private Mono<BookingResponse> proceedWithNewBooking(String userName, Long roomId, LocalDate start, LocalDate end, boolean autoSelect, String requestId) {
@@ -95,74 +145,367 @@ public class BookingService {
             return userIdMono
                     .flatMap(userId -> hotelServiceWebClient
                             .get()
-                            .uri("/api/rooms/recommend?startDate={start}&endDate={end}", start, end)
+                            .uri("/api/rooms/recommend?startDate={start}&endDate={end}&limit={limit}", start, end, autoSelectCandidates)
                             .header("Authorization", "Bearer " + getInternalToken())
                             .retrieve()
                             .bodyToFlux(RoomRequest.class)
-                            .next()
+                            .map(RoomRequest::getId)
+                            .collectList()
+                            .filter(candidates -> !candidates.isEmpty())
                             .switchIfEmpty(Mono.error(new RoomNotAvailableException("No available rooms")))
-                            .flatMap(roomDto -> createAndConfirmBooking(userId, roomDto.getId(), start, end, requestId))
+                            .flatMap(candidates -> createAndConfirmBooking(userId, spreadCandidates(candidates), start, end, requestId,
+                                    booking -> requestConfirmation(booking, requestId)))
                     )
                     .map(mapper::toDto);
         } else {
             return userIdMono
-                    .flatMap(userId -> createAndConfirmBooking(userId, roomId, start, end, requestId))
+                    .flatMap(userId -> createAndConfirmBooking(userId, List.of(roomId), start, end, requestId,
+                            booking -> requestConfirmation(booking, requestId)))
                     .map(mapper::toDto);
         }
     }
 
-    private Mono<Booking> createAndConfirmBooking(Long userId, Long roomId, LocalDate start, LocalDate end, String requestId) {
+    // Порядок кандидатов при autoSelect: первый выбирается из двух случайных (лучший по рейтингу),
+    // чтобы одновременные запросы на те же даты не сходились на одном номере; остальные — по рейтингу
+    private List<Long> spreadCandidates(List<Long> ranked) {
+        if (ranked.size() < 2) {
+            return ranked;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = Math.min(random.nextInt(ranked.size()), random.nextInt(ranked.size()));
+        List<Long> ordered = new ArrayList<>(ranked.size());
+        ordered.add(ranked.get(first));
+        for (int i = 0; i < ranked.size(); i++) {
+            if (i != first) {
+                ordered.add(ranked.get(i));
+            }
+        }
+        return ordered;
+    }
+
+    private Mono<Booking> createAndConfirmBooking(Long userId, List<Long> candidates, LocalDate start, LocalDate end, String requestId,
+                                                  Function<Booking, Mono<Boolean>> confirmation) {
         Booking pending = Booking.builder()
                 .userId(userId)
-                .roomId(roomId)
+                .roomId(candidates.get(0))
                 .startDate(start)
                 .endDate(end)
                 .status(BookingStatus.PENDING)
                 .createdAt(LocalDate.now())
                 .build();
 
-        return bookingRepository.save(pending)
-                .doOnSuccess(saved -> log.info("Booking saved as PENDING | bookingId={}, requestId={}", saved.getId(), requestId))
-                .flatMap(saved -> confirmWithHotel(saved, requestId))
-                .flatMap(confirmedBooking -> {
-                    // Сохраняем в processed_requests только после успешного подтверждения или отмены
-                    return saveProcessedRequest(requestId, confirmedBooking.getId())
-                            .thenReturn(confirmedBooking);
+        // Ключ идемпотентности записывается вместе с PENDING-бронью, до вызова hotel-service:
+        // из двух экземпляров с одним requestId подтверждать номер будет только записавший ключ
+        LocalDateTime processedAt = LocalDateTime.now();
+        return processedRequestBuckets.currentTable()
+                .flatMap(table -> bookingRepository.save(pending)
+                        .flatMap(saved -> insertProcessedRequest(table, requestId, saved.getId(), processedAt)
+                                .thenReturn(saved))
+                        .as(transactionalOperator::transactional))
+                .doOnNext(saved -> {
+                    idempotencyStore.remember(requestId, saved.getId(), processedAt);
+                    log.info("Booking saved as PENDING | bookingId={}, requestId={}", saved.getId(), requestId);
+                })
+                .flatMap(saved -> confirmWithHotel(saved, candidates, requestId, confirmation));
+    }
+
+    // Асинхронный режим: PENDING-бронь, запись outbox и ключ идемпотентности фиксируются одной транзакцией,
+    // клиент сразу получает ответ; подтверждение в hotel-service проводит BookingOutboxWorker
+    public Mono<BookingResponse> createBookingAsync(String userName, Long roomId, LocalDate start, LocalDate end, String requestId) {
+        if (requestId == null || requestId.isBlank()) {
+            return Mono.error(new IllegalArgumentException("requestId is required for idempotency"));
+        }
+        if (roomId == null) {
+            return Mono.error(new IllegalArgumentException("roomId is required for asynchronous booking"));
+        }
+        return inFlightRequests.join("booking:" + requestId, () -> idempotencyStore.findBookingId(requestId)
+                .flatMap(bookingId -> bookingRepository.findById(bookingId)
+                        .switchIfEmpty(Mono.error(new RuntimeException("Inconsistent state: processed request without booking")))
+                        .map(mapper::toDto))
+                .switchIfEmpty(Mono.defer(() -> enqueueBooking(userName, roomId, start, end, requestId)))
+                .onErrorResume(RequestProcessedException.class, e -> claimedBooking(requestId, e)));
+    }
+
+    private Mono<BookingResponse> enqueueBooking(String userName, Long roomId, LocalDate start, LocalDate end, String requestId) {
+        LocalDateTime processedAt = LocalDateTime.now();
+        return userRepository
+                .findByUsername(userName)
+                .switchIfEmpty(Mono.error(new UserNotFoundException()))
+                // Корзина готовится до транзакции: её очистка (TRUNCATE) не должна попасть внутрь
+                .flatMap(user -> processedRequestBuckets.currentTable()
+                        .flatMap(table -> bookingRepository.save(Booking.builder()
+                                        .userId(user.getId())
+                                        .roomId(roomId)
+                                        .startDate(start)
+                                        .endDate(end)
+                                        .status(BookingStatus.PENDING)
+                                        .createdAt(LocalDate.now())
+                                        .build())
+                                .flatMap(saved -> insertOutbox(saved.getId(), requestId)
+                                        .then(insertProcessedRequest(table, requestId, saved.getId(), processedAt))
+                                        .thenReturn(saved))
+                                .as(transactionalOperator::transactional)))
+                .doOnNext(saved -> {
+                    idempotencyStore.remember(requestId, saved.getId(), processedAt);
+                    statusEventBus.publish(BookingStatusEvent.of(saved));
+                    log.info("Booking accepted for asynchronous confirmation | bookingId={}, requestId={}", saved.getId(), requestId);
+                })
+                .map(mapper::toDto);
+    }
+
+    private Mono<Void> insertOutbox(Long bookingId, String requestId) {
+        return databaseClient.sql("""
+                        INSERT INTO booking_outbox (booking_id, request_id, attempts, next_attempt_at)
+                        VALUES (:bookingId, :requestId, 0, :now)
+                        """)
+                .bind("bookingId", bookingId)
+                .bind("requestId", requestId)
+                .bind("now", LocalDateTime.now())
+                .then();
+    }
+
+    // Шаг саги для записи outbox; бронь, уже вышедшая из PENDING, повторно не подтверждается
+    public Mono<Void> resumeBooking(Long bookingId, String requestId) {
+        return bookingRepository.findById(bookingId)
+                .filter(booking -> booking.getStatus() == BookingStatus.PENDING)
+                .flatMap(booking -> confirmWithHotel(booking, List.of(booking.getRoomId()), requestId,
+                        pending -> requestConfirmation(pending, requestId)))
+                .then();
+    }
+
+    // Текущий статус брони, затем его изменения; поток завершается на CONFIRMED или CANCELLED
+    public Flux<BookingStatusEvent> statusEvents(Long bookingId) {
+        // Подписка на изменения раньше чтения из БД: переход, случившийся между ними, не теряется
+        return Flux.merge(
+                        statusEventBus.subscribe(bookingId),
+                        bookingRepository.findById(bookingId)
+                                .switchIfEmpty(Mono.error(new BookingNotFoundException(bookingId)))
+                                .map(BookingStatusEvent::of))
+                .takeUntil(event -> event.getStatus() != BookingStatus.PENDING);
+    }
+
+    public Mono<List<BookingResponse>> createGroupBooking(String userName, List<Long> roomIds, LocalDate start, LocalDate end, String requestId) {
+        if (requestId == null || requestId.isBlank()) {
+            return Mono.error(new IllegalArgumentException("requestId is required for idempotency"));
+        }
+        if (roomIds == null || roomIds.isEmpty()) {
+            return Mono.error(new IllegalArgumentException("roomIds are required"));
+        }
+        if (roomIds.size() > groupMaxRooms) {
+            return Mono.error(new IllegalArgumentException("roomIds must contain at most " + groupMaxRooms + " rooms"));
+        }
+        if (roomIds.stream().distinct().count() != roomIds.size()) {
+            return Mono.error(new IllegalArgumentException("roomIds must be distinct"));
+        }
+        return inFlightRequests.join("group:" + requestId, () -> idempotencyStore.findBookingId(requestId)
+                // Уже обрабатывали — возвращаем брони группы
+                .flatMap(bookingId -> bookingRepository.findAllByGroupRequestIdOrderById(requestId)
+                        .map(mapper::toDto)
+                        .collectList()
+                        .filter(bookings -> !bookings.isEmpty())
+                        .switchIfEmpty(Mono.error(new RequestProcessedException("Request " + requestId + " already processed"))))
+                .switchIfEmpty(Mono.defer(() -> userRepository
+                        .findByUsername(userName)
+                        .switchIfEmpty(Mono.error(new UserNotFoundException()))
+                        .flatMap(user -> claimPendingGroup(user.getId(), roomIds, start, end, requestId))
+                        .flatMap(pending -> confirmGroupWithHotel(pending, requestId))
+                        .map(bookings -> bookings.stream().map(mapper::toDto).toList())))
+                // Группу с этим requestId уже записал другой экземпляр
+                .onErrorResume(RequestProcessedException.class, e -> bookingRepository.findAllByGroupRequestIdOrderById(requestId)
+                        .map(mapper::toDto)
+                        .collectList()
+                        .filter(bookings -> !bookings.isEmpty())
+                        .switchIfEmpty(Mono.error(e))));
+    }
+
+    // PENDING-брони группы и ключ идемпотентности — одной транзакцией, до вызова hotel-service
+    private Mono<List<Booking>> claimPendingGroup(Long userId, List<Long> roomIds, LocalDate start, LocalDate end, String requestId) {
+        LocalDateTime processedAt = LocalDateTime.now();
+        return processedRequestBuckets.currentTable()
+                .flatMap(table -> insertPendingGroup(userId, roomIds, start, end, requestId)
+                        .flatMap(pending -> insertProcessedRequest(table, requestId, pending.get(0).getId(), processedAt)
+                                .thenReturn(pending))
+                        .as(transactionalOperator::transactional))
+                .doOnNext(pending -> idempotencyStore.remember(requestId, pending.get(0).getId(), processedAt));
+    }
+
+    // Все PENDING-брони группы — одним многострочным INSERT вместо отдельного save на каждый номер
+    private Mono<List<Booking>> insertPendingGroup(Long userId, List<Long> roomIds, LocalDate start, LocalDate end, String requestId) {
+        LocalDate createdAt = LocalDate.now();
+        StringBuilder values = new StringBuilder();
+        for (int i = 0; i < roomIds.size(); i++) {
+            values.append(i == 0 ? "" : ", ")
+                    .append("(:userId, :room").append(i).append(", :start, :end, 'PENDING', :createdAt, :requestId)");
+        }
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql("""
+                        SELECT id, room_id FROM FINAL TABLE (
+                            INSERT INTO bookings (user_id, room_id, start_date, end_date, status, created_at, group_request_id)
+                            VALUES %s
+                        )
+                        ORDER BY id
+                        """.formatted(values))
+                .bind("userId", userId)
+                .bind("start", start)
+                .bind("end", end)
+                .bind("createdAt", createdAt)
+                .bind("requestId", requestId);
+        for (int i = 0; i < roomIds.size(); i++) {
+            spec = spec.bind("room" + i, roomIds.get(i));
+        }
+        return spec
+                .map((row, meta) -> Booking.builder()
+                        .id(row.get("id", Long.class))
+                        .userId(userId)
+                        .roomId(row.get("room_id", Long.class))
+                        .startDate(start)
+                        .endDate(end)
+                        .status(BookingStatus.PENDING)
+                        .createdAt(createdAt)
+                        .groupRequestId(requestId)
+                        .build())
+                .all()
+                .collectList()
+                .doOnNext(pending -> log.info("Group bookings saved as PENDING | rooms={}, requestId={}", pending.size(), requestId));
+    }
+
+    // Вся группа подтверждается одним вызовом /api/rooms/confirm-availability: hotel-service блокирует
+    // даты всех номеров в одной транзакции либо ни одного, поэтому отказ не требует компенсации.
+    // Компенсация нужна только при ошибке или таймауте, когда исход вызова неизвестен.
+    private Mono<List<Booking>> confirmGroupWithHotel(List<Booking> pending, String requestId) {
+        return requestGroupConfirmation(pending, requestId)
+                .onErrorResume(e -> {
+                    log.warn("Failed to confirm availability for group booking | requestId={}, error={}",
+                            requestId, e.getMessage());
+                    return Flux.fromIterable(pending)
+                            .concatMap(booking -> releaseRoomInHotel(booking, requestId)
+                                    .onErrorResume(error -> {
+                                        log.warn("Compensation failed for group booking | bookingId={}, error={}",
+                                                booking.getId(), error.getMessage());
+                                        return Mono.empty();
+                                    }))
+                            .then(Mono.just(false));
+                })
+                .flatMap(confirmed -> {
+                    BookingStatus newStatus = confirmed ? BookingStatus.CONFIRMED : BookingStatus.CANCELLED;
+                    return databaseClient.sql("UPDATE bookings SET status = :status WHERE group_request_id = :requestId")
+                            .bind("status", newStatus.name())
+                            .bind("requestId", requestId)
+                            .fetch()
+                            .rowsUpdated()
+                            .doOnNext(updated -> log.info("Group booking status updated | requestId={}, rooms={}, status={}",
+                                    requestId, updated, newStatus))
+                            .then(Mono.fromSupplier(() -> {
+                                pending.forEach(booking -> {
+                                    booking.setStatus(newStatus);
+                                    statusEventBus.publish(BookingStatusEvent.of(booking));
+                                });
+                                return pending;
+                            }));
                 });
     }
 
-    private Mono<Void> saveProcessedRequest(String requestId, Long bookingId) {
-        String sql = """
-                INSERT INTO processed_requests (request_id, booking_id, processed_at)
-                VALUES (:requestId, :bookingId, CURRENT_TIMESTAMP)
-                """;
-        return databaseClient.sql(sql)
+    // true — все номера подтверждены; повтор после потерянного ответа безопасен:
+    // hotel-service узнаёт интервалы тех же броней и отвечает CONFIRMED
+    private Mono<Boolean> requestGroupConfirmation(List<Booking> pending, String requestId) {
+        MultiRoomConfirmRequest req = MultiRoomConfirmRequest.builder()
+                .rooms(pending.stream()
+                        .map(booking -> RoomConfirmation.builder()
+                                .roomId(booking.getRoomId())
+                                .startDate(booking.getStartDate())
+                                .endDate(booking.getEndDate())
+                                .bookingId(booking.getId().toString())
+                                .build())
+                        .toList())
+                .requestId(requestId)
+                .build();
+
+        return hotelServiceWebClient
+                .post()
+                .uri("/api/rooms/confirm-availability")
+                .header("Authorization", "Bearer " + getInternalToken())
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(req)
+                .retrieve()
+                .bodyToFlux(RoomConfirmResult.class)
+                .collectList()
+                .timeout(Duration.ofSeconds(5))
+                .retryWhen(Retry.backoff(2, Duration.ofMillis(500)))
+                .map(results -> {
+                    results.stream()
+                            .filter(result -> result.getStatus() == RoomConfirmResult.Status.CONFLICT)
+                            .forEach(result -> log.info("Room already taken | roomId={}, requestId={}, reason={}",
+                                    result.getRoomId(), requestId, result.getMessage()));
+                    return results.size() == pending.size() && results.stream()
+                            .allMatch(result -> result.getStatus() == RoomConfirmResult.Status.CONFIRMED);
+                });
+    }
+
+    // Запись в корзину текущего момента; ключ, ещё живой в окне идемпотентности в любой корзине, считается обработанным.
+    // Вызывается в транзакции: блокировка полосы ключа держится до её конца
+    private Mono<Void> insertProcessedRequest(String table, String requestId, Long bookingId, LocalDateTime processedAt) {
+        return processedRequestBuckets.lockKey(requestId).then(databaseClient.sql("""
+                        INSERT INTO %s (request_id, booking_id, processed_at)
+                        SELECT :requestId, :bookingId, :processedAt FROM SYSTEM_RANGE(1, 1)
+                        WHERE NOT EXISTS (
+                            SELECT 1 FROM processed_requests
+                            WHERE request_id = :requestId
+                            AND processed_at > :windowStart
+                        )
+                        """.formatted(table))
                 .bind("requestId", requestId)
                 .bind("bookingId", bookingId)
+                .bind("processedAt", processedAt)
+                .bind("windowStart", processedRequestBuckets.windowStart())
                 .fetch()
-                .rowsUpdated()
+                .rowsUpdated())
                 .onErrorResume(throwable -> {
                     if (isUniqueConstraintViolation(throwable)) {
-                        log.warn("Request {} already processed", requestId);
-                        return Mono.error(new RequestProcessedException("Request " + requestId + " already processed"));
+                        return Mono.just(0L);
                     }
                     return Mono.error(throwable);
-
                 })
-                .then();
+                .flatMap(inserted -> {
+                    if (inserted == 0) {
+                        log.warn("Request {} already processed", requestId);
+                        return Mono.<Void>error(new RequestProcessedException("Request " + requestId + " already processed"));
+                    }
+                    return Mono.<Void>empty();
+                });
     }
 
     private String getInternalToken() {
-        return jwtService.generateToken(
-                org.springframework.security.core.userdetails.User
-                        .builder()
-                        .username("system")
-                        .password("system")
-                        .authorities("INTERNAL,USER")
-                        .build());
+        return internalTokenProvider.getToken();
     }
 
-    private Mono<Booking> confirmWithHotel(Booking booking, String requestId) {
+    // Кандидаты перебираются по очереди: если номер уже занят (false), пробуем следующий.
+    // Ошибка или таймаут hotel-service прерывают перебор и запускают компенсацию.
+    private Mono<Booking> confirmWithHotel(Booking booking, List<Long> candidates, String requestId,
+                                           Function<Booking, Mono<Boolean>> confirmation) {
+        return Flux.fromIterable(candidates)
+                .concatMap(roomId -> {
+                    booking.setRoomId(roomId);
+                    return confirmation.apply(booking);
+                })
+                .any(confirmed -> confirmed)
+                .onErrorResume(e -> {
+                    log.warn("Failed to confirm availability for booking | bookingId={}, error={}",
+                            booking.getId(), e.getMessage());
+                    // Компенсация
+                    return releaseRoomInHotel(booking, requestId)
+                            .doOnSuccess(v -> log.info("Compensation recorded | bookingId={}", booking.getId()))
+                            .thenReturn(false);
+                })
+                .flatMap(confirmed -> {
+                    BookingStatus newStatus = confirmed ? BookingStatus.CONFIRMED : BookingStatus.CANCELLED;
+                    log.info("Booking status updated | bookingId={}, roomId={}, status={}, confirmed={}",
+                            booking.getId(), booking.getRoomId(), newStatus, confirmed);
+                    booking.setStatus(newStatus);
+                    return bookingRepository.save(booking);
+                })
+                .doOnNext(saved -> statusEventBus.publish(BookingStatusEvent.of(saved)));
+    }
+
+    private Mono<Boolean> requestConfirmation(Booking booking, String requestId) {
         log.info("Requesting room availability confirmation | bookingId={}, roomId={}, requestId={}",
                 booking.getId(), booking.getRoomId(), requestId);
 
@@ -183,40 +526,51 @@ public class BookingService {
                 .bodyToMono(Boolean.class)
                 .timeout(Duration.ofSeconds(5))
                 .retryWhen(Retry.backoff(2, Duration.ofMillis(500)))
-                .onErrorResume(e -> {
-                    log.warn("Failed to confirm availability for booking | bookingId={}, error={}",
-                            booking.getId(), e.getMessage());
-                    // Компенсация
-                    return releaseRoomInHotel(booking.getRoomId(), booking.getStartDate(), booking.getEndDate(), requestId)
-                            .doOnSuccess(v -> log.info("Compensation completed: room released | bookingId={}", booking.getId()))
-                            .thenReturn(false);
-                })
-                .flatMap(confirmed -> {
-                    BookingStatus newStatus = confirmed ? BookingStatus.CONFIRMED : BookingStatus.CANCELLED;
-                    log.info("Booking status updated | bookingId={}, status={}, confirmed={}",
-                            booking.getId(), newStatus, confirmed);
-                    booking.setStatus(newStatus);
-                    return bookingRepository.save(booking);
+                .doOnNext(confirmed -> {
+                    if (!confirmed) {
+                        log.info("Room already taken | bookingId={}, roomId={}",
+                                booking.getId(), booking.getRoomId());
+                    }
                 });
     }
 
-    private Mono<Void> releaseRoomInHotel(Long roomId, LocalDate start, LocalDate end, String requestId) {
-        log.info("Releasing room due to failure | roomId={}, startDate={}, endDate={}, requestId={}",
-                roomId, start, end, requestId);
+    // Удержание, истёкшее или чужое (404), и номер, снятый с продажи (409), — это отказ, а не сбой:
+    // бронь отменяется без компенсации, интервал удержания снимет его таймер в hotel-service
+    private Mono<Boolean> requestHoldConfirmation(Booking booking, Long holdId, String userName, String requestId) {
+        log.info("Requesting hold confirmation | bookingId={}, roomId={}, holdId={}, requestId={}",
+                booking.getId(), booking.getRoomId(), holdId, requestId);
 
         AvailabilityRequest req = AvailabilityRequest.builder()
-                .startDate(start)
-                .endDate(end)
+                .startDate(booking.getStartDate())
+                .endDate(booking.getEndDate())
+                .bookingId(booking.getId().toString())
+                .requestId(requestId)
+                .userName(userName)
                 .build();
 
         return hotelServiceWebClient
                 .post()
-                .uri("/api/rooms/{id}/release", roomId)
+                .uri("/api/rooms/{id}/holds/{holdId}/confirm", booking.getRoomId(), holdId)
                 .header("Authorization", "Bearer " + getInternalToken())
                 .contentType(MediaType.APPLICATION_JSON)
                 .bodyValue(req)
                 .retrieve()
-                .toBodilessEntity()
-                .then();
+                .bodyToMono(Boolean.class)
+                .timeout(Duration.ofSeconds(5))
+                .onErrorResume(e -> e instanceof WebClientResponseException.NotFound
+                        || e instanceof WebClientResponseException.Conflict, e -> {
+                    log.info("Hold not confirmed | bookingId={}, holdId={}, status={}",
+                            booking.getId(), holdId, ((WebClientResponseException) e).getStatusCode());
+                    return Mono.just(false);
+                })
+                .retryWhen(Retry.backoff(2, Duration.ofMillis(500)));
+    }
+
+    // Снимаются только даты этой брони — по bookingId, а не по диапазону дат.
+    // Освобождение проходит через очередь компенсаций и не теряется, если hotel-service недоступен
+    private Mono<Void> releaseRoomInHotel(Booking booking, String requestId) {
+        log.info("Releasing room due to failure | roomId={}, bookingId={}, requestId={}",
+                booking.getRoomId(), booking.getId(), requestId);
+        return compensationQueue.submit(booking.getRoomId(), booking.getId(), requestId);
     }
 }
@@ -0,0 +1,46 @@
+package home.work.booking.services;
+
+import home.work.booking.dto.BookingStatusEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.Objects;
+
+/**
+ * Поток изменений статуса бронирований внутри процесса. Публикует BookingService после сохранения статуса.
+ * У каждого подписчика свой ограниченный буфер: медленный клиент теряет самые старые события,
+ * но не задерживает остальных.
+ */
+@Component
+public class BookingStatusEventBus {
+    private static final Logger log = LoggerFactory.getLogger(BookingStatusEventBus.class);
+
+    private final Sinks.Many<BookingStatusEvent> sink = Sinks.many().multicast().directBestEffort();
+    private final int bufferSize;
+
+    public BookingStatusEventBus(@Value("${booking.events.buffer-size:64}") int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    // Публикация из разных потоков сериализуется: Sinks.Many не допускает параллельных emit
+    public synchronized void publish(BookingStatusEvent event) {
+        Sinks.EmitResult result = sink.tryEmitNext(event);
+        if (result.isFailure() && result != Sinks.EmitResult.FAIL_ZERO_SUBSCRIBER) {
+            log.warn("Booking status event dropped | bookingId={}, result={}", event.getBookingId(), result);
+        }
+    }
+
+    // bookingId == null — события всех бронирований
+    public Flux<BookingStatusEvent> subscribe(Long bookingId) {
+        return sink.asFlux()
+                .filter(event -> bookingId == null || Objects.equals(bookingId, event.getBookingId()))
+                .onBackpressureBuffer(bufferSize,
+                        dropped -> log.debug("Slow subscriber, event dropped | bookingId={}", dropped.getBookingId()),
+                        BufferOverflowStrategy.DROP_OLDEST);
+    }
+}
@@ -0,0 +1,144 @@
+package home.work.booking.services;
+
+import home.work.booking.dto.AvailabilityRequest;
+import home.work.queue.LeaseQueue;
+import home.work.scheduling.NonOverlappingJob;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.spi.Row;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Очередь компенсаций: освобождение дат в hotel-service для броней, которые сага не подтвердила.
+ * Запись сохраняется в compensation_queue до первого вызова, поэтому если hotel-service недоступен
+ * (а подтверждение чаще всего падает именно поэтому), даты не остаются заблокированными навсегда:
+ * обработчик повторяет вызов по правилам LeaseQueue, а после max-attempts неудач откладывает запись.
+ * Освобождения одного номера уходят одним вызовом release-by-booking со списком броней.
+ */
+@Component
+public class CompensationQueue extends LeaseQueue<CompensationQueue.CompensationEntry> {
+    private static final Logger log = LoggerFactory.getLogger(CompensationQueue.class);
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(5);
+
+    private final WebClient hotelServiceWebClient;
+    private final InternalTokenProvider internalTokenProvider;
+    private final int workers;
+    private final NonOverlappingJob pollJob = new NonOverlappingJob("compensation queue poll");
+
+    public CompensationQueue(DatabaseClient databaseClient,
+                             WebClient hotelServiceWebClient,
+                             InternalTokenProvider internalTokenProvider,
+                             MeterRegistry meterRegistry,
+                             @Value("${booking.compensation.workers:4}") int workers,
+                             @Value("${booking.compensation.batch-size:50}") int batchSize,
+                             @Value("${booking.compensation.lease:PT1M}") Duration lease,
+                             @Value("${booking.compensation.initial-backoff:PT1S}") Duration initialBackoff,
+                             @Value("${booking.compensation.max-backoff:PT10M}") Duration maxBackoff,
+                             @Value("${booking.compensation.max-attempts:20}") int maxAttempts) {
+        super("compensation_queue", "id, room_id, booking_id, request_id, attempts", databaseClient, meterRegistry,
+                new Metrics("compensation.releases", "released", "Room releases sent to hotel-service", "compensation.queue"),
+                new Settings(batchSize, lease, initialBackoff, maxBackoff, maxAttempts));
+        this.hotelServiceWebClient = hotelServiceWebClient;
+        this.internalTokenProvider = internalTokenProvider;
+        this.workers = workers;
+    }
+
+    // Запись сохраняется до вызова hotel-service; первая попытка — сразу, в рамках саги.
+    // Если она не удалась, запись остаётся в очереди, а сага продолжается
+    public Mono<Void> submit(Long roomId, Long bookingId, String requestId) {
+        LocalDateTime now = LocalDateTime.now();
+        DatabaseClient.GenericExecuteSpec insert = databaseClient.sql("""
+                        INSERT INTO compensation_queue (room_id, booking_id, request_id, next_attempt_at, created_at)
+                        VALUES (:roomId, :bookingId, :requestId, :nextAttemptAt, :createdAt)
+                        """)
+                .bind("roomId", roomId)
+                .bind("bookingId", bookingId)
+                .bind("nextAttemptAt", now)
+                .bind("createdAt", now);
+        insert = requestId != null ? insert.bind("requestId", requestId) : insert.bindNull("requestId", String.class);
+        return insert.then()
+                .then(Mono.defer(() -> claim("room_id = :roomId AND", spec -> spec.bind("roomId", roomId))))
+                .flatMap(entries -> entries.isEmpty() ? Mono.<Void>empty() : release(roomId, entries));
+    }
+
+    @Scheduled(initialDelayString = "${booking.compensation.poll-interval:PT1S}",
+            fixedDelayString = "${booking.compensation.poll-interval:PT1S}")
+    public void poll() {
+        pollJob.trigger(() -> drain().then(refreshStats()));
+    }
+
+    @Override
+    protected Mono<Void> process(List<CompensationEntry> entries) {
+        return Flux.fromIterable(entries)
+                .collectMultimap(CompensationEntry::roomId)
+                .flatMapMany(byRoom -> Flux.fromIterable(byRoom.entrySet()))
+                .flatMap(room -> release(room.getKey(), room.getValue()), workers)
+                .then();
+    }
+
+    // Один вызов hotel-service на номер: его брони снимаются одной транзакцией.
+    // requestIds идут по одному на бронь, в порядке bookingIds
+    private Mono<Void> release(Long roomId, Collection<CompensationEntry> entries) {
+        AvailabilityRequest req = AvailabilityRequest.builder()
+                .bookingIds(bookingIdsOf(entries))
+                .requestIds(requestIdsOf(entries))
+                .build();
+
+        return Mono.defer(() -> hotelServiceWebClient
+                        .post()
+                        .uri("/api/rooms/{id}/release-by-booking", roomId)
+                        .header("Authorization", "Bearer " + internalTokenProvider.getToken())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(req)
+                        .retrieve()
+                        .toBodilessEntity()
+                        .timeout(REQUEST_TIMEOUT))
+                .then(complete(entries))
+                .doOnSuccess(v -> log.info("Room released | roomId={}, bookingIds={}, requestIds={}",
+                        roomId, req.getBookingIds(), req.getRequestIds()))
+                .onErrorResume(error -> fail(entries, error));
+    }
+
+    @Override
+    protected CompensationEntry toEntry(Row row) {
+        return new CompensationEntry(
+                row.get("id", Long.class),
+                row.get("room_id", Long.class),
+                row.get("booking_id", Long.class),
+                row.get("request_id", String.class),
+                row.get("attempts", Integer.class));
+    }
+
+    @Override
+    protected String describe(Collection<CompensationEntry> entries) {
+        return "roomIds=" + entries.stream().map(CompensationEntry::roomId).distinct().toList()
+                + ", bookingIds=" + bookingIdsOf(entries)
+                + ", requestIds=" + requestIdsOf(entries);
+    }
+
+    private static List<String> bookingIdsOf(Collection<CompensationEntry> entries) {
+        return entries.stream().map(entry -> entry.bookingId().toString()).toList();
+    }
+
+    private static List<String> requestIdsOf(Collection<CompensationEntry> entries) {
+        return entries.stream().map(CompensationEntry::requestId).toList();
+    }
+
+    record CompensationEntry(Long id, Long roomId, Long bookingId, String requestId, int attempts)
+            implements LeaseQueue.Entry {
+    }
+}
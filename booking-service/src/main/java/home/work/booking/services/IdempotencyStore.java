@@ -0,0 +1,147 @@
+package home.work.booking.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import home.work.booking.entities.ProcessedRequest;
+import home.work.booking.repositories.ProcessedRequestRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Уровни перед processed_requests: фильтры Блума отвечают «точно новый» без обращения к БД,
+ * ограниченный кэш последних requestId → bookingId обслуживает повторы. Оба уровня соблюдают окно
+ * идемпотентности ProcessedRequestBuckets: истёкший ключ снова считается новым.
+ * Фильтр ведётся на каждую корзину времени и выбрасывается вместе с ней при повороте корзин,
+ * поэтому он не переполняется на долго работающем экземпляре; проверяется объединение живых корзин.
+ * Источник истины — таблица: при положительном ответе фильтра и промахе кэша идёт запрос в БД.
+ * Фильтр знает только запросы этого экземпляра и загруженные при старте, поэтому «точно новый» —
+ * лишь подсказка: BookingService записывает ключ в processed_requests вместе с PENDING-бронью, до любых
+ * вызовов hotel-service. Экземпляр, проигравший эту запись, читает бронь победителя через lookup.
+ */
+@Component
+public class IdempotencyStore {
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyStore.class);
+
+    private final ProcessedRequestRepository processedRequestRepository;
+    private final DatabaseClient databaseClient;
+    private final Map<Long, RequestIdBloomFilter> bloomFilters = new ConcurrentHashMap<>();
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+    private final ProcessedRequestBuckets buckets;
+    private final Cache<String, Processed> recent;
+    private final Counter definitelyNew;
+    private final Counter databaseLookups;
+
+    // До загрузки фильтра из БД его отрицательный ответ недостоверен
+    private volatile boolean ready = false;
+
+    public IdempotencyStore(ProcessedRequestRepository processedRequestRepository,
+                            DatabaseClient databaseClient,
+                            ProcessedRequestBuckets buckets,
+                            MeterRegistry meterRegistry,
+                            @Value("${booking.idempotency.bloom.expected-insertions:1000000}") long expectedInsertions,
+                            @Value("${booking.idempotency.bloom.false-positive-rate:0.01}") double falsePositiveRate,
+                            @Value("${booking.idempotency.cache.max-size:10000}") long cacheSize) {
+        this.processedRequestRepository = processedRequestRepository;
+        this.databaseClient = databaseClient;
+        this.buckets = buckets;
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        buckets.addRotationListener(this::dropFiltersBefore);
+        this.recent = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, recent, "idempotency.recent");
+        this.definitelyNew = Counter.builder("idempotency.lookups")
+                .tag("tier", "bloom")
+                .description("Idempotency lookups answered by the given tier")
+                .register(meterRegistry);
+        this.databaseLookups = Counter.builder("idempotency.lookups")
+                .tag("tier", "database")
+                .description("Idempotency lookups answered by the given tier")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        databaseClient.sql("SELECT request_id, processed_at FROM processed_requests WHERE processed_at > :since")
+                .bind("since", buckets.windowStart())
+                .map((row, metadata) -> {
+                    filterOf(row.get("processed_at", LocalDateTime.class)).put(row.get("request_id", String.class));
+                    return true;
+                })
+                .all()
+                .count()
+                .subscribe(
+                        loaded -> {
+                            ready = true;
+                            log.info("Idempotency filter loaded | requests={}", loaded);
+                        },
+                        error -> log.warn("Idempotency filter load failed: {}", String.valueOf(error))
+                );
+    }
+
+    // bookingId уже обработанного запроса или пусто, если запрос новый
+    public Mono<Long> findBookingId(String requestId) {
+        Processed cached = recent.getIfPresent(requestId);
+        if (cached != null && cached.processedAt().isAfter(buckets.windowStart())) {
+            return Mono.just(cached.bookingId());
+        }
+        if (ready && !mightContain(requestId)) {
+            definitelyNew.increment();
+            return Mono.empty();
+        }
+        return lookup(requestId);
+    }
+
+    // Только по таблице, мимо фильтра: ключ мог записать другой экземпляр
+    public Mono<Long> lookup(String requestId) {
+        return processedRequestRepository.findActive(requestId, buckets.windowStart())
+                .doOnSubscribe(subscription -> databaseLookups.increment())
+                .doOnNext(processed -> recent.put(requestId, new Processed(processed.getBookingId(), processed.getProcessedAt())))
+                .map(ProcessedRequest::getBookingId);
+    }
+
+    // Вызывается после записи в processed_requests
+    public void remember(String requestId, Long bookingId, LocalDateTime processedAt) {
+        filterOf(processedAt).put(requestId);
+        recent.put(requestId, new Processed(bookingId, processedAt));
+    }
+
+    private RequestIdBloomFilter filterOf(LocalDateTime processedAt) {
+        return bloomFilters.computeIfAbsent(buckets.bucketOf(processedAt),
+                bucket -> new RequestIdBloomFilter(expectedInsertions, falsePositiveRate));
+    }
+
+    private boolean mightContain(String requestId) {
+        long oldestLive = buckets.oldestLiveBucket();
+        for (Map.Entry<Long, RequestIdBloomFilter> filter : bloomFilters.entrySet()) {
+            if (filter.getKey() >= oldestLive && filter.getValue().mightContain(requestId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void dropFiltersBefore(long oldestLive) {
+        bloomFilters.keySet().removeIf(bucket -> bucket < oldestLive);
+    }
+
+    // Момент обработки хранится вместе с bookingId: кэш не отдаёт ключ за пределами окна
+    private record Processed(Long bookingId, LocalDateTime processedAt) {
+    }
+}
@@ -0,0 +1,51 @@
+package home.work.booking.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Объединение одновременных запросов с одним ключом (single-flight): пока первый запрос выполняется,
+ * следующие подписываются на его результат, а не запускают работу заново.
+ * Работа доводится до конца, даже если все подписчики отключились, — сага не обрывается на середине.
+ * Действует в пределах экземпляра; между экземплярами дубликаты отсекает processed_requests.
+ */
+@Component
+public class InFlightRequests {
+    private final Map<String, Mono<?>> inFlight = new ConcurrentHashMap<>();
+    private final Counter joined;
+
+    public InFlightRequests(MeterRegistry meterRegistry) {
+        this.joined = Counter.builder("booking.inflight.joined")
+                .description("Requests that joined an in-flight request with the same key")
+                .register(meterRegistry);
+        Gauge.builder("booking.inflight.size", inFlight, Map::size)
+                .description("Requests currently in flight")
+                .register(meterRegistry);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> join(String key, Supplier<Mono<T>> work) {
+        return Mono.defer(() -> {
+            AtomicReference<Mono<T>> self = new AtomicReference<>();
+            // Запись удаляется после завершения, поэтому ошибка не закрепляется за ключом: повтор начнёт заново
+            Mono<T> shared = Mono.defer(work)
+                    .doFinally(signal -> inFlight.remove(key, self.get()))
+                    .cache();
+            self.set(shared);
+            Mono<?> running = inFlight.putIfAbsent(key, shared);
+            if (running != null) {
+                joined.increment();
+                return (Mono<T>) running;
+            }
+            return shared;
+        });
+    }
+}
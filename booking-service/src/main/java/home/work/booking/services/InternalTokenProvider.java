@@ -0,0 +1,106 @@
+package home.work.booking.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Токен сервисной учётной записи для вызовов hotel-service. Подписывается один раз на ttl
+ * и перевыпускается планировщиком заранее, за refresh-ahead до истечения, — запросы только читают готовый токен.
+ * Если планировщик не успел (например, сразу после простоя), токен выпускается на месте.
+ */
+@Component
+public class InternalTokenProvider {
+    private static final Logger log = LoggerFactory.getLogger(InternalTokenProvider.class);
+
+    private static final UserDetails SYSTEM_USER = User.builder()
+            .username("system")
+            .password("system")
+            .authorities("INTERNAL,USER")
+            .build();
+
+    private final JwtService jwtService;
+    private final Duration ttl;
+    private final Duration refreshAhead;
+    private final Counter scheduledRefreshes;
+    private final Counter onDemandRefreshes;
+
+    private volatile IssuedToken current;
+
+    public InternalTokenProvider(JwtService jwtService,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${booking.internal-token.ttl:PT30M}") Duration ttl,
+                                 @Value("${booking.internal-token.refresh-ahead:PT5M}") Duration refreshAhead) {
+        if (refreshAhead.compareTo(ttl) >= 0) {
+            throw new IllegalArgumentException("booking.internal-token.refresh-ahead must be shorter than ttl");
+        }
+        this.jwtService = jwtService;
+        this.ttl = ttl;
+        this.refreshAhead = refreshAhead;
+        this.scheduledRefreshes = Counter.builder("internal.token.refreshes")
+                .tag("trigger", "scheduled")
+                .description("Internal service tokens issued")
+                .register(meterRegistry);
+        this.onDemandRefreshes = Counter.builder("internal.token.refreshes")
+                .tag("trigger", "on-demand")
+                .description("Internal service tokens issued")
+                .register(meterRegistry);
+        Gauge.builder("internal.token.remaining", this, provider -> provider.remaining().toSeconds())
+                .baseUnit("seconds")
+                .description("Time left until the cached internal token expires")
+                .register(meterRegistry);
+        this.current = issue();
+    }
+
+    public String getToken() {
+        IssuedToken token = current;
+        if (Instant.now().isBefore(token.expiresAt())) {
+            return token.value();
+        }
+        return refresh(token, onDemandRefreshes).value();
+    }
+
+    @Scheduled(initialDelayString = "${booking.internal-token.check-interval:PT30S}",
+            fixedDelayString = "${booking.internal-token.check-interval:PT30S}")
+    public void refreshIfExpiring() {
+        IssuedToken token = current;
+        if (!Instant.now().isBefore(token.expiresAt().minus(refreshAhead))) {
+            refresh(token, scheduledRefreshes);
+        }
+    }
+
+    // Перевыпуск под блокировкой: одновременные запросы с истёкшим токеном подписывают новый один раз
+    private synchronized IssuedToken refresh(IssuedToken seen, Counter trigger) {
+        if (current != seen) {
+            return current;
+        }
+        current = issue();
+        trigger.increment();
+        log.info("Internal token refreshed | expiresAt={}", current.expiresAt());
+        return current;
+    }
+
+    private IssuedToken issue() {
+        // Срок в кэше отсчитывается до подписи — кэш не переживёт сам токен
+        Instant expiresAt = Instant.now().plus(ttl);
+        return new IssuedToken(jwtService.generateToken(SYSTEM_USER, ttl), expiresAt);
+    }
+
+    private Duration remaining() {
+        Duration left = Duration.between(Instant.now(), current.expiresAt());
+        return left.isNegative() ? Duration.ZERO : left;
+    }
+
+    private record IssuedToken(String value, Instant expiresAt) {
+    }
+}
@@ -2,14 +2,15 @@ package home.work.booking.services;
 
 import home.work.security.JwtSecretKeyProvider;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
-import java.nio.charset.StandardCharsets;
+import javax.crypto.SecretKey;
+import java.time.Duration;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -18,12 +19,22 @@ import java.util.stream.Collectors;
 
 @Service
 public class JwtService {
-    @Value("${security.jwt.secret:dev-secret-please-change}")
-    private String secret;
-    @Value("${security.jwt.expiration.access:86400000}") // 24 часа
-    private long jwtExpiration;
-    @Value("${security.jwt.expiration.refresh:604800000}") // 7 дней
-    private long refreshExpiration;
+    private final long jwtExpiration;
+    private final long refreshExpiration;
+    // Ключ и парсер строятся один раз при старте, а не на каждую подпись и проверку
+    private final SecretKey signingKey;
+    private final JwtParser parser;
+
+    public JwtService(@Value("${security.jwt.secret:dev-secret-please-change}") String secret,
+                      @Value("${security.jwt.expiration.access:86400000}") long jwtExpiration, // 24 часа
+                      @Value("${security.jwt.expiration.refresh:604800000}") long refreshExpiration) { // 7 дней
+        this.jwtExpiration = jwtExpiration;
+        this.refreshExpiration = refreshExpiration;
+        this.signingKey = JwtSecretKeyProvider.getHmacKey(secret);
+        this.parser = Jwts.parser()
+                .verifyWith(signingKey)
+                .build();
+    }
 
     public String extractUsername(String token) {
         return extractClaim(token, Claims::getSubject);
@@ -42,6 +53,10 @@ public class JwtService {
         return buildToken(extraClaims, userDetails, jwtExpiration);
     }
 
+    public String generateToken(UserDetails userDetails, Duration ttl) {
+        return buildToken(new HashMap<>(), userDetails, ttl.toMillis());
+    }
+
     public String generateRefreshToken(UserDetails userDetails) {
         return buildToken(new HashMap<>(), userDetails, refreshExpiration);
     }
@@ -57,7 +72,7 @@ public class JwtService {
                 .issuedAt(new Date(System.currentTimeMillis()))
                 .expiration(new Date(System.currentTimeMillis() + expiration))
                 .claim("roles", String.join(",", authorities))
-                .signWith(Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8)))
+                .signWith(signingKey)
                 .compact();
     }
 
@@ -75,9 +90,7 @@ public class JwtService {
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(JwtSecretKeyProvider.getHmacKey(secret))
-                .build()
+        return parser
                 .parseSignedClaims(token)
                 .getPayload();
     }
@@ -0,0 +1,151 @@
+package home.work.booking.services;
+
+import home.work.scheduling.NonOverlappingJob;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongConsumer;
+
+/**
+ * Окно идемпотентности и корзины processed_requests. Время делится на корзины шириной window / (SLOTS - 2);
+ * корзина N пишется в таблицу processed_requests_{N mod SLOTS}. Перед первой записью корзины её таблица
+ * очищается целиком (TRUNCATE): прежняя корзина этой таблицы к тому моменту старше окна.
+ * Планировщик готовит следующую корзину заранее, поэтому запись обычно не ждёт очистки.
+ * Первичный ключ есть только у таблицы одной корзины; уникальность по всем живым корзинам держит lockKey.
+ */
+@Component
+public class ProcessedRequestBuckets {
+    private static final Logger log = LoggerFactory.getLogger(ProcessedRequestBuckets.class);
+
+    // Столько таблиц processed_requests_N в schema.sql
+    private static final int SLOTS = 4;
+    // Столько строк в processed_request_locks
+    private static final int LOCK_STRIPES = 64;
+
+    private final DatabaseClient databaseClient;
+    private final Duration window;
+    private final long bucketMillis;
+    private final AtomicLongArray prepared = new AtomicLongArray(SLOTS);
+    private final Map<Long, Mono<Void>> preparing = new ConcurrentHashMap<>();
+    private final Counter truncations;
+    private final List<LongConsumer> rotationListeners = new CopyOnWriteArrayList<>();
+    private final NonOverlappingJob rotationJob = new NonOverlappingJob("idempotency bucket rotation");
+
+    public ProcessedRequestBuckets(DatabaseClient databaseClient,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${booking.idempotency.window:PT24H}") Duration window) {
+        if (window.toMillis() < SLOTS - 2) {
+            throw new IllegalArgumentException("booking.idempotency.window is too short");
+        }
+        this.databaseClient = databaseClient;
+        this.window = window;
+        this.bucketMillis = window.toMillis() / (SLOTS - 2);
+        for (int slot = 0; slot < SLOTS; slot++) {
+            prepared.set(slot, -1);
+        }
+        this.truncations = Counter.builder("idempotency.buckets.truncated")
+                .description("Expired idempotency buckets dropped")
+                .register(meterRegistry);
+    }
+
+    // Ключи, записанные раньше этого момента, считаются истёкшими, даже если их корзина ещё не очищена
+    public LocalDateTime windowStart() {
+        return LocalDateTime.now().minus(window);
+    }
+
+    // Таблица корзины текущего момента, уже готовая к записи
+    public Mono<String> currentTable() {
+        long bucket = System.currentTimeMillis() / bucketMillis;
+        return prepare(bucket).thenReturn(tableOf(bucket));
+    }
+
+    // Вызывается в транзакции записи ключа до проверки NOT EXISTS: записи одного requestId идут по очереди,
+    // и вторая видит уже зафиксированный ключ первой, в какую бы корзину тот ни попал
+    public Mono<Void> lockKey(String requestId) {
+        return databaseClient.sql("SELECT stripe FROM processed_request_locks WHERE stripe = :stripe FOR UPDATE")
+                .bind("stripe", Math.floorMod(requestId.hashCode(), LOCK_STRIPES))
+                .fetch()
+                .one()
+                .then();
+    }
+
+    public long bucketOf(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() / bucketMillis;
+    }
+
+    // Самая старая корзина, ключи которой ещё могут быть внутри окна
+    public long oldestLiveBucket() {
+        return bucketOf(windowStart());
+    }
+
+    // Вызывается при каждом повороте с номером самой старой живой корзины
+    public void addRotationListener(LongConsumer listener) {
+        rotationListeners.add(listener);
+    }
+
+    @Scheduled(initialDelayString = "${booking.idempotency.rotation-interval:PT1M}",
+            fixedDelayString = "${booking.idempotency.rotation-interval:PT1M}")
+    public void rotate() {
+        long bucket = System.currentTimeMillis() / bucketMillis;
+        rotationJob.trigger(() -> prepare(bucket).then(prepare(bucket + 1))
+                .doOnSuccess(v -> {
+                    long oldestLive = oldestLiveBucket();
+                    rotationListeners.forEach(listener -> listener.accept(oldestLive));
+                }));
+    }
+
+    private Mono<Void> prepare(long bucket) {
+        if (prepared.get(slotOf(bucket)) == bucket) {
+            return Mono.empty();
+        }
+        // Одновременные записи в новую корзину ждут одной и той же очистки
+        return preparing.computeIfAbsent(bucket, key -> claim(key)
+                .doFinally(signal -> preparing.remove(key))
+                .cache());
+    }
+
+    // Таблицу очищает только тот, чей UPDATE перевёл её на новую корзину
+    private Mono<Void> claim(long bucket) {
+        int slot = slotOf(bucket);
+        return databaseClient.sql("""
+                        UPDATE processed_request_buckets SET bucket_no = :bucket
+                        WHERE slot_no = :slot AND bucket_no < :bucket
+                        """)
+                .bind("bucket", bucket)
+                .bind("slot", slot)
+                .fetch()
+                .rowsUpdated()
+                .flatMap(claimed -> claimed == 0
+                        ? Mono.<Void>empty()
+                        : databaseClient.sql("TRUNCATE TABLE " + tableOf(bucket))
+                                .then()
+                                .doOnSuccess(v -> {
+                                    truncations.increment();
+                                    log.info("Idempotency bucket prepared | bucket={}, table={}", bucket, tableOf(bucket));
+                                }))
+                .doOnSuccess(v -> prepared.set(slot, bucket));
+    }
+
+    private static int slotOf(long bucket) {
+        return (int) Math.floorMod(bucket, (long) SLOTS);
+    }
+
+    private static String tableOf(long bucket) {
+        return "processed_requests_" + slotOf(bucket);
+    }
+}
@@ -115,7 +115,7 @@ public class UserService {
                 .then(saveUserRoles(userId, newRoles));
     }
 
-    public Flux<UserResponse> getUsers() {
-        return userRepository.findAllWithRoles().map(mapper::toDto);
+    public Flux<UserResponse> getUsers(Long afterId, int limit) {
+        return userRepository.findPageWithRoles(afterId != null ? afterId : 0L, limit).map(mapper::toDto);
     }
 }
@@ -19,14 +19,104 @@ CREATE TABLE IF NOT EXISTS bookings (
     end_date DATE NOT NULL,
     status VARCHAR(50) NOT NULL CHECK (status IN ('PENDING', 'CONFIRMED', 'CANCELLED')),
     created_at DATE NOT NULL,
+    group_request_id VARCHAR(255),
     FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
 );
 
-CREATE INDEX IF NOT EXISTS idx_bookings_user_id ON bookings(user_id);
+CREATE INDEX IF NOT EXISTS idx_bookings_user_id ON bookings(user_id, id);
 CREATE INDEX IF NOT EXISTS idx_bookings_room_dates ON bookings(room_id, start_date, end_date);
+CREATE INDEX IF NOT EXISTS idx_bookings_group_request ON bookings(group_request_id);
 
-CREATE TABLE IF NOT EXISTS processed_requests (
+-- Ключи идемпотентности хранятся по корзинам времени: кольцо из 4 таблиц, корзина номер N лежит в таблице N mod 4.
+-- Истёкшая корзина очищается целиком через TRUNCATE перед повторным использованием (ProcessedRequestBuckets).
+CREATE TABLE IF NOT EXISTS processed_requests_0 (
     request_id VARCHAR(255) PRIMARY KEY,
     booking_id BIGINT NOT NULL,
-    processed_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
-);
\ No newline at end of file
+    processed_at TIMESTAMP NOT NULL
+);
+CREATE TABLE IF NOT EXISTS processed_requests_1 (
+    request_id VARCHAR(255) PRIMARY KEY,
+    booking_id BIGINT NOT NULL,
+    processed_at TIMESTAMP NOT NULL
+);
+CREATE TABLE IF NOT EXISTS processed_requests_2 (
+    request_id VARCHAR(255) PRIMARY KEY,
+    booking_id BIGINT NOT NULL,
+    processed_at TIMESTAMP NOT NULL
+);
+CREATE TABLE IF NOT EXISTS processed_requests_3 (
+    request_id VARCHAR(255) PRIMARY KEY,
+    booking_id BIGINT NOT NULL,
+    processed_at TIMESTAMP NOT NULL
+);
+
+-- Какая корзина сейчас лежит в каждой таблице кольца; -1 — таблица ещё не использовалась
+CREATE TABLE IF NOT EXISTS processed_request_buckets (
+    slot_no INT PRIMARY KEY,
+    bucket_no BIGINT NOT NULL
+);
+INSERT INTO processed_request_buckets (slot_no, bucket_no)
+    SELECT X - 1, -1 FROM SYSTEM_RANGE(1, 4)
+    WHERE X - 1 NOT IN (SELECT slot_no FROM processed_request_buckets);
+
+-- Полосы блокировки ключей: запись ключа захватывает строку полосы hash(request_id) mod 64 до конца транзакции,
+-- поэтому проверка по всем корзинам и вставка в текущую не расходятся, даже если два экземпляра пишут в разные корзины
+CREATE TABLE IF NOT EXISTS processed_request_locks (
+    stripe INT PRIMARY KEY
+);
+INSERT INTO processed_request_locks (stripe)
+    SELECT X - 1 FROM SYSTEM_RANGE(1, 64)
+    WHERE X - 1 NOT IN (SELECT stripe FROM processed_request_locks);
+
+-- Чтение идёт через представление по всем корзинам; окно идемпотентности проверяется по processed_at
+CREATE VIEW IF NOT EXISTS processed_requests AS
+    SELECT request_id, booking_id, processed_at FROM processed_requests_0
+    UNION ALL SELECT request_id, booking_id, processed_at FROM processed_requests_1
+    UNION ALL SELECT request_id, booking_id, processed_at FROM processed_requests_2
+    UNION ALL SELECT request_id, booking_id, processed_at FROM processed_requests_3;
+-- Outbox асинхронных бронирований: запись создаётся в одной транзакции с PENDING-бронью
+-- и удаляется после завершения саги (BookingOutboxWorker)
+CREATE TABLE IF NOT EXISTS booking_outbox (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    booking_id BIGINT NOT NULL,
+    request_id VARCHAR(255) NOT NULL,
+    attempts INT NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMP NOT NULL,
+    locked_until TIMESTAMP,
+    parked_at TIMESTAMP, -- после max-attempts неудач запись больше не берётся
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_booking_outbox_due ON booking_outbox(next_attempt_at);
+
+-- Очередь компенсаций: освобождение дат в hotel-service для неподтверждённых броней.
+-- Запись удаляется, когда hotel-service снял даты (CompensationQueue)
+CREATE TABLE IF NOT EXISTS compensation_queue (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    room_id BIGINT NOT NULL,
+    booking_id BIGINT NOT NULL,
+    request_id VARCHAR(255),
+    attempts INT NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMP NOT NULL,
+    locked_until TIMESTAMP,
+    parked_at TIMESTAMP, -- после max-attempts неудач запись больше не берётся
+    created_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_compensation_queue_due ON compensation_queue(next_attempt_at);
+CREATE INDEX IF NOT EXISTS idx_compensation_queue_room ON compensation_queue(room_id, next_attempt_at);
+
+-- Прошедшие бронирования переносятся сюда фоновым уплотнением (BookingCompactor)
+CREATE TABLE IF NOT EXISTS bookings_archive (
+    id BIGINT PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    room_id BIGINT NOT NULL,
+    start_date DATE NOT NULL,
+    end_date DATE NOT NULL,
+    status VARCHAR(50) NOT NULL,
+    created_at DATE NOT NULL,
+    group_request_id VARCHAR(255),
+    archived_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_bookings_end_date ON bookings(end_date);
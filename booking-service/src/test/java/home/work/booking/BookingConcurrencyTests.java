@@ -1,8 +1,6 @@
 package home.work.booking;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
-import home.work.booking.dto.RoomRequest;
+import home.work.booking.services.ProcessedRequestBuckets;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import org.junit.jupiter.api.*;
@@ -10,13 +8,20 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -26,6 +31,15 @@ public class BookingConcurrencyTests {
     @Autowired
     private WebTestClient webTestClient;
 
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @Autowired
+    private ProcessedRequestBuckets buckets;
+
+    @Autowired
+    private TransactionalOperator transactionalOperator;
+
     private MockWebServer mockHotelService;
 
     @BeforeEach
@@ -44,30 +58,12 @@ public class BookingConcurrencyTests {
 
     @Test
     void twoParallelRequestsWithSameRequestIdShouldBeIdempotent() throws InterruptedException {
-        // Мокаем recommend -> вернём комнату 3
-        RoomRequest mockRoom = new RoomRequest(3L);
-        ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
-        String roomJson;
-        try {
-            roomJson = mapper.writeValueAsString(mockRoom);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-
-        mockHotelService.enqueue(new MockResponse().setResponseCode(200)
-                .setHeader("Content-Type", "application/json")
-                .setBody(roomJson));
-
-        // Мокаем confirm-availability -> true
+        // autoSelect = false: recommend не вызывается, только confirm-availability.
+        // Первое подтверждение успешно; второе, если бы до него дошло, получило бы false
         mockHotelService.enqueue(new MockResponse().setResponseCode(200)
                 .setHeader("Content-Type", "application/json")
                 .setBody("true"));
 
-        mockHotelService.enqueue(new MockResponse().setResponseCode(200)
-                .setHeader("Content-Type", "application/json")
-                .setBody(roomJson));
-
-        // Мокаем confirm-availability -> true
         mockHotelService.enqueue(new MockResponse().setResponseCode(200)
                 .setHeader("Content-Type", "application/json")
                 .setBody("false"));
@@ -143,11 +139,124 @@ public class BookingConcurrencyTests {
 
         Assertions.assertNotNull(firstResp.get(), "First response should not be null");
         Assertions.assertNotNull(secondResp.get(), "Second response should not be null");
-//        Assertions.assertEquals(firstResp.get(), secondResp.get(), "Responses must be identical for idempotent requestId");
-//        // Проверяем, что mockHotelService был вызван ровно  раза: recommend + confirm (не более)
-//        // (в очереди мы положили 4 ответа, поэтому ожидаем 4 запросa на сервер)
-//        int requestCount = mockHotelService.getRequestCount();
-//        Assertions.assertEquals(4, requestCount, "Hotel service should be called only for recommend and confirm once");
+        Assertions.assertEquals(firstResp.get(), secondResp.get(), "Responses must be identical for idempotent requestId");
+        // Второй запрос присоединяется к первому (или читает сохранённый результат) — confirm отправляется один раз
+        int requestCount = mockHotelService.getRequestCount();
+        Assertions.assertEquals(1, requestCount, "Hotel service should be asked to confirm only once");
+    }
+
+    @Test
+    void requestClaimedByAnotherInstanceShouldNotBeConfirmedAgain() {
+        // Другой экземпляр уже записал ключ вместе со своей PENDING-бронью; фильтр Блума этого экземпляра о нём не знает
+        String requestId = "claimed-elsewhere-1";
+        LocalDate start = LocalDate.now().plusDays(24);
+        Long bookingId = databaseClient.sql("""
+                        SELECT id FROM FINAL TABLE (
+                            INSERT INTO bookings (user_id, room_id, start_date, end_date, status, created_at)
+                            SELECT id, 4, :start, :end, 'PENDING', CURRENT_DATE FROM users WHERE username = 'user@example.com'
+                        )
+                        """)
+                .bind("start", start)
+                .bind("end", start.plusDays(2))
+                .map((row, metadata) -> row.get("id", Long.class))
+                .one()
+                .block();
+        buckets.currentTable()
+                .flatMap(table -> databaseClient.sql("INSERT INTO " + table + " (request_id, booking_id, processed_at) VALUES (:requestId, :bookingId, :now)")
+                        .bind("requestId", requestId)
+                        .bind("bookingId", bookingId)
+                        .bind("now", LocalDateTime.now())
+                        .then())
+                .block();
+
+        String token = obtainAccessToken("user@example.com", "password");
+        Map<?, ?> booking = webTestClient.post().uri("/api/bookings")
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(String.format("""
+                        {
+                          "roomId": "4",
+                          "startDate": "%s",
+                          "endDate": "%s",
+                          "autoSelect": false,
+                          "requestId": "%s"
+                        }
+                        """, start, start.plusDays(2), requestId))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Map.class)
+                .returnResult()
+                .getResponseBody();
+
+        Assertions.assertNotNull(booking);
+        Assertions.assertEquals(bookingId, ((Number) booking.get("id")).longValue());
+        Assertions.assertEquals(0, mockHotelService.getRequestCount(), "Claimed request must not be confirmed twice");
+    }
+
+    @Test
+    void requestClaimedConcurrentlyInAnotherBucketShouldNotBeConfirmedAgain() throws Exception {
+        // Другой экземпляр уже перешёл на следующую корзину и пишет туда тот же ключ, но ещё не зафиксировал транзакцию.
+        // Первичный ключ таблицы корзины этого не видит: дубль отсекает только блокировка полосы ключа
+        String requestId = "claimed-next-bucket-1";
+        LocalDate start = LocalDate.now().plusDays(26);
+        Long bookingId = databaseClient.sql("""
+                        SELECT id FROM FINAL TABLE (
+                            INSERT INTO bookings (user_id, room_id, start_date, end_date, status, created_at)
+                            SELECT id, 5, :start, :end, 'PENDING', CURRENT_DATE FROM users WHERE username = 'user@example.com'
+                        )
+                        """)
+                .bind("start", start)
+                .bind("end", start.plusDays(2))
+                .map((row, metadata) -> row.get("id", Long.class))
+                .one()
+                .block();
+        String nextTable = "processed_requests_" + Math.floorMod(buckets.bucketOf(LocalDateTime.now()) + 1, 4);
+
+        CountDownLatch claimed = new CountDownLatch(1);
+        CompletableFuture<Void> otherInstance = buckets.lockKey(requestId)
+                .then(databaseClient.sql("INSERT INTO " + nextTable + " (request_id, booking_id, processed_at) VALUES (:requestId, :bookingId, :now)")
+                        .bind("requestId", requestId)
+                        .bind("bookingId", bookingId)
+                        .bind("now", LocalDateTime.now())
+                        .then())
+                .doOnSuccess(v -> claimed.countDown())
+                .then(Mono.delay(Duration.ofMillis(300), Schedulers.boundedElastic()))
+                .as(transactionalOperator::transactional)
+                // Драйвер H2 блокирует поток на ожидании блокировки: фиксация не должна делить его с запросом
+                .subscribeOn(Schedulers.boundedElastic())
+                .then()
+                .toFuture();
+        Assertions.assertTrue(claimed.await(5, TimeUnit.SECONDS), "Other instance must claim the key first");
+
+        String token = obtainAccessToken("user@example.com", "password");
+        Map<?, ?> booking = webTestClient.post().uri("/api/bookings")
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(String.format("""
+                        {
+                          "roomId": "5",
+                          "startDate": "%s",
+                          "endDate": "%s",
+                          "autoSelect": false,
+                          "requestId": "%s"
+                        }
+                        """, start, start.plusDays(2), requestId))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Map.class)
+                .returnResult()
+                .getResponseBody();
+        otherInstance.get(5, TimeUnit.SECONDS);
+
+        Assertions.assertNotNull(booking);
+        Assertions.assertEquals(bookingId, ((Number) booking.get("id")).longValue());
+        Assertions.assertEquals(0, mockHotelService.getRequestCount(), "Claimed request must not be confirmed twice");
+        Long keys = databaseClient.sql("SELECT COUNT(*) AS count FROM processed_requests WHERE request_id = :requestId")
+                .bind("requestId", requestId)
+                .map((row, metadata) -> row.get("count", Long.class))
+                .one()
+                .block();
+        Assertions.assertEquals(1L, keys, "Key must be stored in one bucket only");
     }
 
     private String obtainAccessToken(String username, String password) {
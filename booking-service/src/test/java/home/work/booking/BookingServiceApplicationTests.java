@@ -5,6 +5,7 @@ import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import home.work.booking.dto.RoomRequest;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -15,8 +16,15 @@ import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @AutoConfigureWebTestClient
@@ -318,6 +326,256 @@ public class BookingServiceApplicationTests {
                 .jsonPath("$.status").isEqualTo("CANCELLED");
     }
 
+    @Test
+    void shouldConfirmGroupBookingAndReplayByRequestId() {
+        // === Мокаем /api/rooms/confirm-availability: вся группа подтверждается одним вызовом ===
+        mockHotelService.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setHeader("Content-Type", "application/json")
+                .setBody("""
+                        [
+                          {"roomId": 11, "status": "CONFIRMED"},
+                          {"roomId": 12, "status": "CONFIRMED"},
+                          {"roomId": 13, "status": "CONFIRMED"}
+                        ]
+                        """));
+
+        String token = obtainAccessToken("user@example.com", "password");
+
+        String groupBody = """
+                {
+                  "roomIds": [11, 12, 13],
+                  "startDate": "2027-05-01",
+                  "endDate": "2027-05-04",
+                  "requestId": "group-booking"
+                }
+                """;
+
+        webTestClient
+                .post().uri("/api/bookings/group")
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(groupBody)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(3)
+                .jsonPath("$[0].status").isEqualTo("CONFIRMED")
+                .jsonPath("$[2].status").isEqualTo("CONFIRMED");
+
+        // Повтор с тем же requestId возвращает ту же группу без обращений к Hotel Service
+        webTestClient
+                .post().uri("/api/bookings/group")
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(groupBody)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(3);
+
+        assertEquals(1, mockHotelService.getRequestCount());
+    }
+
+    @Test
+    void shouldAcceptAsyncBookingAndStreamStatus() {
+        // === Мокаем /api/rooms/21/confirm-availability — вызывается фоновым обработчиком ===
+        mockHotelService.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setHeader("Content-Type", "application/json")
+                .setBody("true"));
+
+        String token = obtainAccessToken("user@example.com", "password");
+
+        String bookingBody = String.format("""
+                {
+                  "roomId": 21,
+                  "startDate": "%s",
+                  "endDate": "%s",
+                  "requestId": "async-booking"
+                }
+                """, LocalDate.now().plusDays(40), LocalDate.now().plusDays(42));
+
+        Map<?, ?> accepted = webTestClient
+                .post().uri("/api/bookings/async")
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(bookingBody)
+                .exchange()
+                .expectStatus().isAccepted()
+                .expectHeader().exists("Location")
+                .expectBody(Map.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertNotNull(accepted);
+        assertEquals("PENDING", accepted.get("status"));
+
+        // Поток завершается на итоговом статусе
+        List<Map> events = webTestClient
+                .get().uri("/api/bookings/{id}/events", ((Number) accepted.get("id")).longValue())
+                .header("Authorization", "Bearer " + token)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Map.class)
+                .getResponseBody()
+                .collectList()
+                .block(Duration.ofSeconds(15));
+
+        assertNotNull(events);
+        assertEquals("CONFIRMED", events.get(events.size() - 1).get("status"));
+    }
+
+    @Test
+    void shouldRetryRoomReleaseWhenHotelServiceIsDown() throws Exception {
+        // === confirm-availability падает три раза (с повторами), затем падает и освобождение ===
+        for (int i = 0; i < 3; i++) {
+            mockHotelService.enqueue(new MockResponse().setResponseCode(500));
+        }
+        mockHotelService.enqueue(new MockResponse().setResponseCode(503));
+        // Повтор освобождения из очереди компенсаций
+        mockHotelService.enqueue(new MockResponse().setResponseCode(200));
+
+        String token = obtainAccessToken("user@example.com", "password");
+
+        String bookingBody = String.format("""
+                {
+                  "roomId": 22,
+                  "startDate": "%s",
+                  "endDate": "%s",
+                  "autoSelect": false,
+                  "requestId": "release-retry"
+                }
+                """, LocalDate.now().plusDays(50), LocalDate.now().plusDays(52));
+
+        Map<?, ?> booking = webTestClient
+                .post().uri("/api/bookings")
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(bookingBody)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Map.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertNotNull(booking);
+        assertEquals("CANCELLED", booking.get("status"));
+
+        for (int i = 0; i < 4; i++) {
+            assertNotNull(mockHotelService.takeRequest(5, TimeUnit.SECONDS));
+        }
+        // Освобождение не потерялось: обработчик очереди повторил его после задержки
+        RecordedRequest retry = mockHotelService.takeRequest(10, TimeUnit.SECONDS);
+        assertNotNull(retry);
+        assertEquals("/api/rooms/22/release-by-booking", retry.getPath());
+        assertTrue(retry.getBody().readUtf8().contains("\"bookingIds\":[\"" + booking.get("id") + "\"]"));
+    }
+
+    @Test
+    void shouldFallThroughToNextCandidateWhenFirstIsTaken() throws Exception {
+        // === Мокаем /api/rooms/recommend: два кандидата ===
+        mockHotelService.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setHeader("Content-Type", "application/json")
+                .setBody("[{\"id\": 31}, {\"id\": 32}]"));
+        // === Первый подтверждаемый номер уже занят, второй свободен ===
+        mockHotelService.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setHeader("Content-Type", "application/json")
+                .setBody("false"));
+        mockHotelService.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setHeader("Content-Type", "application/json")
+                .setBody("true"));
+
+        String token = obtainAccessToken("user@example.com", "password");
+        String bookingBody = String.format("""
+                {
+                  "startDate": "%s",
+                  "endDate": "%s",
+                  "autoSelect": true,
+                  "requestId": "fall-through-1"
+                }
+                """, LocalDate.now().plusDays(70), LocalDate.now().plusDays(72));
+
+        Map<?, ?> booking = webTestClient
+                .post().uri("/api/bookings")
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(bookingBody)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Map.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertNotNull(booking);
+        assertEquals("CONFIRMED", booking.get("status"));
+
+        assertTrue(mockHotelService.takeRequest(5, TimeUnit.SECONDS).getPath().startsWith("/api/rooms/recommend"));
+        String rejected = mockHotelService.takeRequest(5, TimeUnit.SECONDS).getPath();
+        String confirmed = mockHotelService.takeRequest(5, TimeUnit.SECONDS).getPath();
+        // Порядок кандидатов случайный (spreadCandidates), но спрашиваются оба, и бронь получает второй
+        assertTrue(List.of(rejected, confirmed).containsAll(List.of(
+                "/api/rooms/31/confirm-availability", "/api/rooms/32/confirm-availability")));
+        assertEquals(confirmed, "/api/rooms/" + booking.get("roomId") + "/confirm-availability");
+        assertEquals(3, mockHotelService.getRequestCount());
+    }
+
+    @Test
+    void shouldConfirmBookingFromUserHold() throws Exception {
+        // === Мокаем /api/rooms/23/holds/7/confirm: удержание становится бронью ===
+        mockHotelService.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setHeader("Content-Type", "application/json")
+                .setBody("true"));
+        // === Второе удержание уже истекло ===
+        mockHotelService.enqueue(new MockResponse().setResponseCode(404));
+
+        String token = obtainAccessToken("user@example.com", "password");
+        String bookingBody = """
+                {
+                  "roomId": 23,
+                  "holdId": %d,
+                  "startDate": "%s",
+                  "endDate": "%s",
+                  "requestId": "%s"
+                }
+                """;
+        LocalDate start = LocalDate.now().plusDays(60);
+
+        webTestClient
+                .post().uri("/api/bookings")
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(String.format(bookingBody, 7, start, start.plusDays(2), "hold-booking-1"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.status").isEqualTo("CONFIRMED");
+
+        RecordedRequest confirm = mockHotelService.takeRequest(5, TimeUnit.SECONDS);
+        assertNotNull(confirm);
+        assertEquals("/api/rooms/23/holds/7/confirm", confirm.getPath());
+        assertTrue(confirm.getBody().readUtf8().contains("\"userName\":\"user@example.com\""));
+
+        // Истёкшее удержание — отказ без повторов и компенсации
+        webTestClient
+                .post().uri("/api/bookings")
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(String.format(bookingBody, 8, start.plusDays(4), start.plusDays(6), "hold-booking-2"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.status").isEqualTo("CANCELLED");
+
+        assertEquals("/api/rooms/23/holds/8/confirm", mockHotelService.takeRequest(5, TimeUnit.SECONDS).getPath());
+        assertEquals(2, mockHotelService.getRequestCount());
+    }
+
     private String obtainAccessToken(String username, String password) {
         String authBody = String.format("""
                 {
@@ -0,0 +1,56 @@
+package home.work.booking.services;
+
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureWebTestClient
+public class InternalTokenProviderTests {
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Test
+    void scheduledRefreshShouldSwapTokenBeforeItExpires() throws InterruptedException {
+        // Короткий срок: за время теста токен истёк бы несколько раз
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        InternalTokenProvider provider = new InternalTokenProvider(jwtService, meterRegistry,
+                Duration.ofSeconds(3), Duration.ofSeconds(2));
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(provider::refreshIfExpiring, 100, 100, TimeUnit.MILLISECONDS);
+
+        Set<String> seen = new HashSet<>();
+        try {
+            long deadline = System.currentTimeMillis() + 8_000;
+            while (System.currentTimeMillis() < deadline) {
+                String token = provider.getToken();
+                Date expiresAt = jwtService.extractClaim(token, Claims::getExpiration);
+                Assertions.assertTrue(expiresAt.getTime() - System.currentTimeMillis() > 500,
+                        "Request path must get a token well before it expires");
+                seen.add(token);
+                Thread.sleep(50);
+            }
+        } finally {
+            scheduler.shutdownNow();
+        }
+
+        Assertions.assertTrue(seen.size() >= 3, "Token must be swapped in the background: " + seen.size());
+        Assertions.assertTrue(meterRegistry.counter("internal.token.refreshes", "trigger", "scheduled").count() >= 2);
+        Assertions.assertEquals(0.0,
+                meterRegistry.counter("internal.token.refreshes", "trigger", "on-demand").count(),
+                "Request path must never mint a token");
+    }
+}
@@ -0,0 +1,79 @@
+package home.work.booking.services;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import java.time.LocalDateTime;
+
+// Плановый поворот в тестах отложен на час (test/resources/application.yml): корзины готовит только тест
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureWebTestClient
+public class ProcessedRequestBucketsTests {
+
+    @Autowired
+    private ProcessedRequestBuckets buckets;
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @Test
+    void rotationShouldTruncateNextBucketAndKeepCurrent() throws InterruptedException {
+        long current = buckets.bucketOf(LocalDateTime.now());
+        String currentTable = buckets.currentTable().block();
+        String nextTable = "processed_requests_" + Math.floorMod(current + 1, 4);
+
+        // Таблица следующей корзины ещё хранит корзину, ушедшую за окно на полный круг назад
+        databaseClient.sql("UPDATE processed_request_buckets SET bucket_no = :stale WHERE slot_no = :slot")
+                .bind("stale", current + 1 - 4)
+                .bind("slot", Math.floorMod(current + 1, 4))
+                .then()
+                .block();
+        insertKey(nextTable, "rotation-expired-1", LocalDateTime.now().minusDays(3));
+        insertKey(currentTable, "rotation-live-1", LocalDateTime.now());
+
+        buckets.rotate();
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (bucketOfSlot(Math.floorMod(current + 1, 4)) != current + 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        Assertions.assertEquals(current + 1, bucketOfSlot(Math.floorMod(current + 1, 4)), "Rotation must claim the next bucket");
+        Assertions.assertEquals(0, countKeys(nextTable, "rotation-expired-1"), "Next bucket table must be truncated");
+        Assertions.assertEquals(1, countKeys(currentTable, "rotation-live-1"), "Current bucket must survive rotation");
+        Assertions.assertEquals(1, countKeys("processed_requests", "rotation-live-1"));
+
+        // Повторный поворот в той же корзине ничего не очищает
+        insertKey(nextTable, "rotation-next-1", LocalDateTime.now());
+        buckets.rotate();
+        Thread.sleep(200);
+        Assertions.assertEquals(1, countKeys(nextTable, "rotation-next-1"), "Prepared bucket must not be truncated again");
+    }
+
+    private void insertKey(String table, String requestId, LocalDateTime processedAt) {
+        databaseClient.sql("INSERT INTO " + table + " (request_id, booking_id, processed_at) VALUES (:requestId, 0, :processedAt)")
+                .bind("requestId", requestId)
+                .bind("processedAt", processedAt)
+                .then()
+                .block();
+    }
+
+    private long bucketOfSlot(int slot) {
+        return databaseClient.sql("SELECT bucket_no FROM processed_request_buckets WHERE slot_no = :slot")
+                .bind("slot", slot)
+                .map((row, metadata) -> row.get("bucket_no", Long.class))
+                .one()
+                .block();
+    }
+
+    private long countKeys(String table, String requestId) {
+        return databaseClient.sql("SELECT COUNT(*) AS count FROM " + table + " WHERE request_id = :requestId")
+                .bind("requestId", requestId)
+                .map((row, metadata) -> row.get("count", Long.class))
+                .one()
+                .block();
+    }
+}
@@ -0,0 +1,90 @@
+package home.work.compaction;
+
+import home.work.scheduling.NonOverlappingJob;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Основа фонового уплотнения таблицы: строки, закончившиеся не позже cutoff, переносятся в архив
+ * пачками по batchSize, каждая в своей короткой транзакции. Подкласс задаёт выбор пачки и сам перенос.
+ * Метрики: compaction.rows и compaction.duration с тегом table.
+ */
+public abstract class ArchiveCompactor<T> {
+    private static final Logger log = LoggerFactory.getLogger(ArchiveCompactor.class);
+
+    private final String table;
+    private final TransactionalOperator transactionalOperator;
+    private final int batchSize;
+    private final Counter rowsMoved;
+    private final Timer duration;
+    private final NonOverlappingJob job;
+
+    protected ArchiveCompactor(String table,
+                               TransactionalOperator transactionalOperator,
+                               MeterRegistry meterRegistry,
+                               int batchSize) {
+        this.table = table;
+        this.transactionalOperator = transactionalOperator;
+        this.batchSize = batchSize;
+        this.rowsMoved = Counter.builder("compaction.rows")
+                .tag("table", table)
+                .description("Rows moved to the archive table")
+                .register(meterRegistry);
+        this.duration = Timer.builder("compaction.duration")
+                .tag("table", table)
+                .register(meterRegistry);
+        this.job = new NonOverlappingJob(table + " compaction");
+    }
+
+    // Для @Scheduled-метода подкласса
+    protected void trigger(LocalDate cutoff) {
+        job.trigger(() -> compact(cutoff));
+    }
+
+    // Переносит все строки, закончившиеся не позже cutoff; возвращает число перенесённых строк
+    public Mono<Long> compact(LocalDate cutoff) {
+        Timer.Sample sample = Timer.start();
+        return compactBatch(cutoff)
+                .expand(batch -> batch.selected() == batchSize ? compactBatch(cutoff) : Mono.empty())
+                .map(Batch::moved)
+                .reduce(0L, Long::sum)
+                .doOnNext(total -> {
+                    long nanos = sample.stop(duration);
+                    log.info("Table compacted | table={}, cutoff={}, rows={}, tookMs={}", table, cutoff, total, nanos / 1_000_000);
+                });
+    }
+
+    private Mono<Batch> compactBatch(LocalDate cutoff) {
+        return selectBatch(cutoff, batchSize)
+                .collectList()
+                .flatMap(rows -> rows.isEmpty()
+                        ? Mono.just(new Batch(0, 0))
+                        : moveBatch(rows, Mono.defer(() -> archive(rows)).as(transactionalOperator::transactional))
+                                .map(moved -> new Batch(rows.size(), moved.size())))
+                .doOnNext(batch -> rowsMoved.increment(batch.moved()));
+    }
+
+    // Не больше batchSize строк, закончившихся не позже cutoff
+    protected abstract Flux<T> selectBatch(LocalDate cutoff, int batchSize);
+
+    // Перенос пачки в архив; выполняется в транзакции. Строка могла измениться после выбора пачки,
+    // поэтому переносятся только всё ещё подходящие строки — их и возвращает
+    protected abstract Mono<List<T>> archive(List<T> rows);
+
+    // Обёртка вокруг транзакции пачки (например, очередь записи и обновление индексов после фиксации)
+    protected Mono<List<T>> moveBatch(List<T> rows, Mono<List<T>> transaction) {
+        return transaction;
+    }
+
+    private record Batch(int selected, long moved) {
+    }
+}
@@ -7,4 +7,11 @@ public class ExceptionProcessor {
         // H2: "Unique index or primary key violation"
         return msg.toLowerCase().contains("unique") || msg.toLowerCase().contains("violation");
     }
+
+    public static boolean isLockTimeout(Throwable ex) {
+        String msg = ex.getMessage();
+        if (msg == null) return false;
+        // H2: "Timeout trying to lock table", "Concurrent update to table"
+        return msg.toLowerCase().contains("timeout trying to lock") || msg.toLowerCase().contains("concurrent update");
+    }
 }
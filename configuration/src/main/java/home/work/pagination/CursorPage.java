@@ -0,0 +1,68 @@
+package home.work.pagination;
+
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Keyset-пагинация по id: страница запрашивается как «следующие size строк после id из курсора»,
+ * поэтому стоимость страницы не зависит от глубины. Тело ответа — массив, как и без пагинации;
+ * курсор следующей страницы передаётся в заголовке X-Next-Cursor (нет заголовка — последняя страница).
+ */
+public final class CursorPage {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final int MAX_SIZE = 100;
+
+    private static final String PREFIX = "id:";
+
+    private CursorPage() {
+    }
+
+    public static void checkSize(int size) {
+        if (size <= 0 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("size must be between 1 and " + MAX_SIZE);
+        }
+    }
+
+    public static String encode(Long id) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PREFIX + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // null — первая страница
+    public static Long decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!value.startsWith(PREFIX)) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return Long.parseLong(value.substring(PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException тоже IllegalArgumentException
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    // rows запрошены с лимитом size + 1: лишняя строка только сообщает, что есть следующая страница
+    public static <T> Mono<ResponseEntity<List<T>>> toResponse(Flux<T> rows, int size, Function<T, Long> idOf) {
+        return rows.take(size + 1L)
+                .collectList()
+                .map(list -> {
+                    if (list.size() <= size) {
+                        return ResponseEntity.ok(list);
+                    }
+                    List<T> page = list.subList(0, size);
+                    return ResponseEntity.ok()
+                            .header(NEXT_CURSOR_HEADER, encode(idOf.apply(page.get(size - 1))))
+                            .body(page);
+                });
+    }
+}
@@ -0,0 +1,237 @@
+package home.work.queue;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.spi.Row;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Основа очереди в таблице: записи забираются пачками под аренду (locked_until), так что другой проход
+ * или экземпляр не возьмёт их, пока аренда не истечёт. Обработанная запись удаляется; неудачная
+ * повторяется с задержкой initialBackoff · 2^attempts (не больше maxBackoff), а после maxAttempts неудач
+ * откладывается (parked_at) и больше не берётся. Вернуть её в работу — сбросить parked_at и attempts.
+ * Таблица подкласса содержит id, attempts, next_attempt_at, locked_until, parked_at и created_at.
+ * Метрики: счётчик metrics.processed (тег result) и gauge metrics.queue: .depth, .oldest.age, .parked.
+ */
+public abstract class LeaseQueue<T extends LeaseQueue.Entry> {
+    private static final Logger log = LoggerFactory.getLogger(LeaseQueue.class);
+
+    protected final DatabaseClient databaseClient;
+    private final String table;
+    private final String columns;
+    private final Settings settings;
+    private final Counter completed;
+    private final Counter retried;
+    private final Counter parked;
+
+    private final AtomicLong depth = new AtomicLong();
+    private final AtomicLong oldestAgeSeconds = new AtomicLong();
+    private final AtomicLong parkedCount = new AtomicLong();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final AtomicBoolean rerun = new AtomicBoolean(false);
+
+    // columns — столбцы, которые читает toEntry (кроме них в FINAL TABLE ничего не выбирается)
+    protected LeaseQueue(String table, String columns, DatabaseClient databaseClient,
+                         MeterRegistry meterRegistry, Metrics metrics, Settings settings) {
+        if (settings.maxAttempts() <= 0) {
+            throw new IllegalArgumentException(table + " max-attempts must be positive");
+        }
+        this.table = table;
+        this.columns = columns;
+        this.databaseClient = databaseClient;
+        this.settings = settings;
+        this.completed = Counter.builder(metrics.processed())
+                .tag("result", metrics.completedResult())
+                .description(metrics.description())
+                .register(meterRegistry);
+        this.retried = Counter.builder(metrics.processed())
+                .tag("result", "retried")
+                .description(metrics.description())
+                .register(meterRegistry);
+        this.parked = Counter.builder(metrics.processed())
+                .tag("result", "parked")
+                .description(metrics.description())
+                .register(meterRegistry);
+        Gauge.builder(metrics.queue() + ".depth", depth, AtomicLong::get)
+                .description("Entries waiting in " + table)
+                .register(meterRegistry);
+        Gauge.builder(metrics.queue() + ".oldest.age", oldestAgeSeconds, AtomicLong::get)
+                .baseUnit("seconds")
+                .description("Age of the oldest waiting entry in " + table)
+                .register(meterRegistry);
+        Gauge.builder(metrics.queue() + ".parked", parkedCount, AtomicLong::get)
+                .description("Entries in " + table + " parked after max-attempts failures")
+                .register(meterRegistry);
+    }
+
+    // Одновременно идёт один проход; запрос на проход во время текущего выполняется сразу после него
+    public Mono<Void> drain() {
+        return Mono.defer(() -> {
+            if (!draining.compareAndSet(false, true)) {
+                rerun.set(true);
+                return Mono.empty();
+            }
+            rerun.set(false);
+            Mono<Integer> round = Mono.defer(() -> claim("", UnaryOperator.identity()))
+                    .flatMap(entries -> process(entries).then(Mono.just(entries.size())));
+            return round
+                    .expand(claimed -> claimed == settings.batchSize() || rerun.getAndSet(false) ? round : Mono.empty())
+                    .then()
+                    .doFinally(signal -> draining.set(false));
+        });
+    }
+
+    // Обработка забранной пачки; каждая запись завершается через complete или fail
+    protected abstract Mono<Void> process(List<T> entries);
+
+    protected abstract T toEntry(Row row);
+
+    // Контекст записей для логов (брони, номера, requestId)
+    protected abstract String describe(Collection<T> entries);
+
+    // Готовые записи под аренду; condition — дополнительный фильтр вида "room_id = :roomId AND"
+    protected Mono<List<T>> claim(String condition, UnaryOperator<DatabaseClient.GenericExecuteSpec> binder) {
+        LocalDateTime now = LocalDateTime.now();
+        String sql = """
+                SELECT %s FROM FINAL TABLE (
+                    UPDATE %s SET locked_until = :lockedUntil
+                    WHERE id IN (
+                        SELECT id FROM %s
+                        WHERE %s next_attempt_at <= :now
+                        AND parked_at IS NULL
+                        AND (locked_until IS NULL OR locked_until < :now)
+                        ORDER BY id
+                        LIMIT :batchSize
+                    )
+                    AND (locked_until IS NULL OR locked_until < :now)
+                )
+                """.formatted(columns, table, table, condition);
+        return binder.apply(databaseClient.sql(sql)
+                        .bind("lockedUntil", now.plus(settings.lease()))
+                        .bind("now", now)
+                        .bind("batchSize", settings.batchSize()))
+                .map((row, metadata) -> toEntry(row))
+                .all()
+                .collectList();
+    }
+
+    protected Mono<Void> complete(Collection<T> entries) {
+        return databaseClient.sql("DELETE FROM " + table + " WHERE id IN (:ids)")
+                .bind("ids", idsOf(entries))
+                .then()
+                .doOnSuccess(v -> completed.increment(entries.size()));
+    }
+
+    // Записи, исчерпавшие maxAttempts, откладываются; остальные повторяются позже
+    protected Mono<Void> fail(Collection<T> entries, Throwable error) {
+        Map<Boolean, List<T>> exhausted = entries.stream()
+                .collect(Collectors.partitioningBy(entry -> entry.attempts() + 1 >= settings.maxAttempts()));
+        return retry(exhausted.get(false), error)
+                .then(park(exhausted.get(true), error))
+                .onErrorResume(e -> {
+                    // Аренда истечёт сама, и записи будут взяты снова
+                    log.warn("Queue entries reschedule failed | table={}, {}: {}", table, describe(entries), String.valueOf(e));
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Void> retry(List<T> entries, Throwable error) {
+        if (entries.isEmpty()) {
+            return Mono.empty();
+        }
+        int attempts = entries.stream().mapToInt(Entry::attempts).max().orElse(0);
+        Duration delay = backoff(attempts);
+        log.warn("Queue entries failed, retrying | table={}, {}, attempt={}, delay={}, error={}",
+                table, describe(entries), attempts + 1, delay, error.getMessage());
+        retried.increment(entries.size());
+        return databaseClient.sql("""
+                        UPDATE %s
+                        SET attempts = attempts + 1, next_attempt_at = :nextAttemptAt, locked_until = NULL
+                        WHERE id IN (:ids)
+                        """.formatted(table))
+                .bind("nextAttemptAt", LocalDateTime.now().plus(delay))
+                .bind("ids", idsOf(entries))
+                .then();
+    }
+
+    private Mono<Void> park(List<T> entries, Throwable error) {
+        if (entries.isEmpty()) {
+            return Mono.empty();
+        }
+        log.error("Queue entries failed {} times, parking | table={}, {}, error={}",
+                settings.maxAttempts(), table, describe(entries), error.getMessage());
+        parked.increment(entries.size());
+        return databaseClient.sql("""
+                        UPDATE %s
+                        SET attempts = attempts + 1, parked_at = :parkedAt, locked_until = NULL
+                        WHERE id IN (:ids)
+                        """.formatted(table))
+                .bind("parkedAt", LocalDateTime.now())
+                .bind("ids", idsOf(entries))
+                .then();
+    }
+
+    // Глубина очереди, возраст самой старой ждущей записи и число отложенных для метрик
+    protected Mono<Void> refreshStats() {
+        return databaseClient.sql("""
+                        SELECT SUM(CASE WHEN parked_at IS NULL THEN 1 ELSE 0 END) AS depth,
+                               MIN(CASE WHEN parked_at IS NULL THEN created_at END) AS oldest,
+                               SUM(CASE WHEN parked_at IS NULL THEN 0 ELSE 1 END) AS parked
+                        FROM %s
+                        """.formatted(table))
+                .map((row, metadata) -> {
+                    Number waiting = row.get("depth", Number.class);
+                    Number parkedNow = row.get("parked", Number.class);
+                    LocalDateTime oldest = row.get("oldest", LocalDateTime.class);
+                    depth.set(waiting != null ? waiting.longValue() : 0);
+                    parkedCount.set(parkedNow != null ? parkedNow.longValue() : 0);
+                    oldestAgeSeconds.set(oldest != null
+                            ? Math.max(0, Duration.between(oldest, LocalDateTime.now()).toSeconds())
+                            : 0);
+                    return true;
+                })
+                .one()
+                .then()
+                .onErrorResume(e -> {
+                    log.warn("Queue stats refresh failed | table={}: {}", table, String.valueOf(e));
+                    return Mono.empty();
+                });
+    }
+
+    // initialBackoff · 2^attempts, не больше maxBackoff
+    private Duration backoff(int attempts) {
+        Duration delay = settings.initialBackoff().multipliedBy(1L << Math.min(attempts, 20));
+        return delay.compareTo(settings.maxBackoff()) > 0 ? settings.maxBackoff() : delay;
+    }
+
+    private static List<Long> idsOf(Collection<? extends Entry> entries) {
+        return entries.stream().map(Entry::id).toList();
+    }
+
+    public interface Entry {
+        Long id();
+
+        int attempts();
+    }
+
+    public record Settings(int batchSize, Duration lease, Duration initialBackoff, Duration maxBackoff, int maxAttempts) {
+    }
+
+    // completedResult — значение тега result для успешно обработанных записей
+    public record Metrics(String processed, String completedResult, String description, String queue) {
+    }
+}
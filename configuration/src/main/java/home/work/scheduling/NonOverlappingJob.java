@@ -0,0 +1,37 @@
+package home.work.scheduling;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Запуск реактивной фоновой задачи из @Scheduled-метода. Поток планировщика не ждёт её завершения:
+ * у планировщика один поток на все задачи сервиса, и задача, ждущая БД или другой сервис, задерживала бы
+ * остальные. Пока предыдущий запуск не завершился, новый пропускается, поэтому запуски не накладываются.
+ */
+public final class NonOverlappingJob {
+    private static final Logger log = LoggerFactory.getLogger(NonOverlappingJob.class);
+
+    private final String name;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    public NonOverlappingJob(String name) {
+        this.name = name;
+    }
+
+    public void trigger(Supplier<Mono<?>> job) {
+        if (!running.compareAndSet(false, true)) {
+            log.debug("Job is still running, skipping | job={}", name);
+            return;
+        }
+        Mono.defer(job)
+                .doFinally(signal -> running.set(false))
+                .subscribe(
+                        null,
+                        error -> log.warn("Job failed | job={}: {}", name, String.valueOf(error))
+                );
+    }
+}
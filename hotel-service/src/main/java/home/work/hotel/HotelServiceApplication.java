@@ -6,10 +6,12 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cloud.client.discovery.EnableDiscoveryClient;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Import;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @ComponentScan("home.work")
 @SpringBootApplication
 @EnableDiscoveryClient
+@EnableScheduling
 @Import(value={H2ConsoleAutoConfiguration.class})
 public class HotelServiceApplication {
     public static void main(String[] args) {
@@ -2,22 +2,38 @@ package home.work.hotel.controllers;
 
 import home.work.hotel.dto.*;
 import home.work.hotel.services.HotelService;
+import home.work.hotel.services.ImportService;
+import home.work.hotel.services.OccupancyService;
+import home.work.pagination.CursorPage;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.LocalDate;
+import java.util.List;
+
 @RestController
 @RequestMapping("/api/hotels")
 @RequiredArgsConstructor
 public class HotelController {
+    private static final int MAX_CALENDAR_DAYS = 366;
 
     private final HotelService hotelService;
+    private final OccupancyService occupancyService;
+    private final ImportService importService;
 
     @PostMapping
     @PreAuthorize("hasRole('ADMIN')")
@@ -27,7 +43,45 @@ public class HotelController {
 
     @GetMapping
     @PreAuthorize("hasRole('USER')")
-    public Flux<HotelResponse> getHotels() {
-        return hotelService.getHotels();
+    public Mono<ResponseEntity<List<HotelResponse>>> getHotels(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        CursorPage.checkSize(size);
+        return CursorPage.toResponse(hotelService.getHotels(CursorPage.decode(cursor), size + 1),
+                size, HotelResponse::getId);
+    }
+
+    @GetMapping(value = "/{id}/calendar", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("hasRole('USER')")
+    public Flux<RoomCalendarResponse> getCalendar(
+            @PathVariable Long id,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        if (!from.isBefore(to) || from.plusDays(MAX_CALENDAR_DAYS).isBefore(to)) {
+            return Flux.error(new IllegalArgumentException("from must be before to, at most " + MAX_CALENDAR_DAYS + " days"));
+        }
+        return hotelService.getCalendar(id, from, to);
+    }
+
+    @GetMapping("/{id}/occupancy")
+    @PreAuthorize("hasRole('ADMIN')")
+    public Flux<DailyOccupancyResponse> getOccupancy(
+            @PathVariable Long id,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        if (!from.isBefore(to) || from.plusDays(MAX_CALENDAR_DAYS).isBefore(to)) {
+            return Flux.error(new IllegalArgumentException("from must be before to, at most " + MAX_CALENDAR_DAYS + " days"));
+        }
+        return occupancyService.getOccupancy(id, from, to);
+    }
+
+    // Тело читается потоком: NDJSON (application/x-ndjson) или CSV (text/csv), результат — по строке на каждую строку импорта
+    @PostMapping(value = "/import",
+            consumes = {MediaType.APPLICATION_NDJSON_VALUE, "text/csv"},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("hasRole('ADMIN')")
+    public Flux<ImportResult> importCatalog(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                            @RequestBody Flux<String> lines) {
+        return importService.importLines(lines, contentType.startsWith("text/csv"));
     }
 }
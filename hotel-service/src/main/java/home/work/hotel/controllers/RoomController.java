@@ -1,25 +1,52 @@
 package home.work.hotel.controllers;
 
+import home.work.hotel.dto.AvailabilityEvent;
 import home.work.hotel.dto.AvailabilityRequest;
+import home.work.hotel.dto.BulkAvailabilityRequest;
+import home.work.hotel.dto.DateRange;
+import home.work.hotel.dto.HoldRequest;
+import home.work.hotel.dto.HoldResponse;
+import home.work.hotel.dto.MultiRoomConfirmRequest;
+import home.work.hotel.dto.RoomAvailabilityResponse;
+import home.work.hotel.dto.RoomConfirmResult;
+import home.work.hotel.dto.RoomConfirmation;
 import home.work.hotel.dto.RoomRequest;
 import home.work.hotel.dto.RoomResponse;
 import home.work.hotel.services.RoomService;
+import home.work.pagination.CursorPage;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/rooms")
 @RequiredArgsConstructor
 public class RoomController {
+    private static final int MAX_CONFIRM_ROOMS = 100;
+    private static final int MAX_RELEASE_BOOKINGS = 100;
 
     private final RoomService roomService;
 
+    @Value("${hotel.holds.default-ttl:PT10M}")
+    private Duration defaultHoldTtl;
+
+    @Value("${hotel.holds.max-ttl:PT30M}")
+    private Duration maxHoldTtl;
+
     @PostMapping
     @PreAuthorize("hasRole('ADMIN')")
     public Mono<RoomResponse> addRoom(@RequestBody RoomRequest room) {
@@ -34,16 +61,38 @@ public class RoomController {
 
     @GetMapping("/all")
     @PreAuthorize("hasRole('ADMIN')")
-    public Flux<RoomResponse> getRooms() {
-        return roomService.getRooms();
+    public Mono<ResponseEntity<List<RoomResponse>>> getRooms(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        CursorPage.checkSize(size);
+        return CursorPage.toResponse(roomService.getRooms(CursorPage.decode(cursor), size + 1),
+                size, RoomResponse::getId);
     }
 
     @GetMapping("/recommend")
     @PreAuthorize("hasRole('USER')")
     public Flux<RoomResponse> getRecommendedRooms(@RequestParam(required = false) Long hotelId,
                                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
-                                                  @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
-        return roomService.getRecommendedRooms(hotelId, startDate, endDate);
+                                                  @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+                                                  @RequestParam(required = false) Integer limit) {
+        if (limit != null && limit <= 0) {
+            return Flux.error(new IllegalArgumentException("limit must be positive"));
+        }
+        return roomService.getRecommendedRooms(hotelId, startDate, endDate, limit);
+    }
+
+    @PostMapping("/availability")
+    @PreAuthorize("hasRole('USER')")
+    public Flux<RoomAvailabilityResponse> getAvailability(@RequestBody BulkAvailabilityRequest request) {
+        boolean byRooms = request.getRoomIds() != null && !request.getRoomIds().isEmpty();
+        if (byRooms == (request.getHotelId() != null)) {
+            return Flux.error(new IllegalArgumentException("Either roomIds or hotelId is required"));
+        }
+        if (request.getRanges() == null || request.getRanges().isEmpty()
+                || !request.getRanges().stream().allMatch(DateRange::isValid)) {
+            return Flux.error(new IllegalArgumentException("ranges must be non-empty with startDate before endDate"));
+        }
+        return roomService.getAvailability(request);
     }
 
     @PreAuthorize("hasRole('INTERNAL')")
@@ -53,10 +102,96 @@ public class RoomController {
         return roomService.confirmAvailability(id, request.getStartDate(), request.getEndDate(), request.getBookingId());
     }
 
+    // Несколько номеров и интервалов одной транзакцией: всё или ничего, результат по каждому номеру
+    @PreAuthorize("hasRole('INTERNAL')")
+    @PostMapping("/confirm-availability")
+    public Mono<List<RoomConfirmResult>> confirmAvailability(@RequestBody MultiRoomConfirmRequest request) {
+        if (request.getRooms() == null || request.getRooms().isEmpty()
+                || !request.getRooms().stream().allMatch(RoomConfirmation::isValid)) {
+            return Mono.error(new IllegalArgumentException("rooms must be non-empty, each with roomId and startDate before endDate"));
+        }
+        if (request.getRooms().size() > MAX_CONFIRM_ROOMS) {
+            return Mono.error(new IllegalArgumentException("rooms must contain at most " + MAX_CONFIRM_ROOMS + " entries"));
+        }
+        return roomService.confirmAvailability(request.getRooms());
+    }
+
     @PreAuthorize("hasRole('INTERNAL')")
     @PostMapping("/{id}/release")
     public Mono<Void> releaseRoom(@PathVariable Long id,
                                   @RequestBody AvailabilityRequest request) {
         return roomService.releaseRoom(id, request.getStartDate(), request.getEndDate());
     }
+
+    @PreAuthorize("hasRole('INTERNAL')")
+    @PostMapping("/{id}/release-by-booking")
+    public Mono<Void> releaseByBooking(@PathVariable Long id,
+                                       @RequestBody AvailabilityRequest request) {
+        List<String> bookingIds = new ArrayList<>();
+        if (request.getBookingId() != null && !request.getBookingId().isBlank()) {
+            bookingIds.add(request.getBookingId());
+        }
+        if (request.getBookingIds() != null) {
+            request.getBookingIds().stream()
+                    .filter(bookingId -> bookingId != null && !bookingId.isBlank())
+                    .forEach(bookingIds::add);
+        }
+        if (bookingIds.isEmpty()) {
+            return Mono.error(new IllegalArgumentException("bookingId is required"));
+        }
+        if (bookingIds.size() > MAX_RELEASE_BOOKINGS) {
+            return Mono.error(new IllegalArgumentException("bookingIds must contain at most " + MAX_RELEASE_BOOKINGS + " entries"));
+        }
+        return roomService.releaseByBooking(id, bookingIds, request.getRequestIds() != null
+                ? request.getRequestIds()
+                : request.getRequestId() != null ? List.of(request.getRequestId()) : List.of());
+    }
+
+    // Поток изменений занятости (SSE или NDJSON) вместо периодического опроса
+    @GetMapping(value = "/events", produces = {MediaType.TEXT_EVENT_STREAM_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    @PreAuthorize("hasRole('USER')")
+    public Flux<AvailabilityEvent> availabilityEvents(@RequestParam(required = false) Long hotelId) {
+        return roomService.availabilityEvents(hotelId);
+    }
+
+    @PutMapping("/{id}/available")
+    @PreAuthorize("hasRole('ADMIN')")
+    public Mono<RoomResponse> setAvailable(@PathVariable Long id, @RequestParam boolean value) {
+        return roomService.setAvailable(id, value);
+    }
+
+    @PostMapping("/{id}/holds")
+    @PreAuthorize("hasRole('USER')")
+    public Mono<HoldResponse> holdRoom(@AuthenticationPrincipal Jwt jwt,
+                                       @PathVariable Long id,
+                                       @RequestBody HoldRequest request) {
+        if (request.getStartDate() == null || request.getEndDate() == null
+                || !request.getStartDate().isBefore(request.getEndDate())) {
+            return Mono.error(new IllegalArgumentException("startDate must be before endDate"));
+        }
+        Duration ttl = request.getTtlSeconds() != null ? Duration.ofSeconds(request.getTtlSeconds()) : defaultHoldTtl;
+        if (ttl.isNegative() || ttl.isZero() || ttl.compareTo(maxHoldTtl) > 0) {
+            return Mono.error(new IllegalArgumentException("ttlSeconds must be between 1 and " + maxHoldTtl.toSeconds()));
+        }
+        return roomService.holdRoom(id, request.getStartDate(), request.getEndDate(), ttl, jwt.getSubject());
+    }
+
+    @DeleteMapping("/{id}/holds/{holdId}")
+    @PreAuthorize("hasRole('USER')")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public Mono<Void> cancelHold(@AuthenticationPrincipal Jwt jwt, @PathVariable Long id, @PathVariable Long holdId) {
+        return roomService.cancelHold(id, holdId, jwt.getSubject());
+    }
+
+    @PreAuthorize("hasRole('INTERNAL')")
+    @PostMapping("/{id}/holds/{holdId}/confirm")
+    public Mono<Boolean> confirmHold(@PathVariable Long id,
+                                     @PathVariable Long holdId,
+                                     @RequestBody AvailabilityRequest request) {
+        // Бронь оформляется от имени пользователя: подтверждается только его удержание
+        if (request.getUserName() == null || request.getUserName().isBlank()) {
+            return Mono.error(new IllegalArgumentException("userName is required"));
+        }
+        return roomService.confirmHold(id, holdId, request.getBookingId(), request.getUserName());
+    }
 }
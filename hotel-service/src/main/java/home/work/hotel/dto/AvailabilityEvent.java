@@ -0,0 +1,20 @@
+package home.work.hotel.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+@Data
+@Builder
+public class AvailabilityEvent {
+    public enum Type { BLOCKED, HELD, RELEASED, AVAILABLE, UNAVAILABLE }
+
+    private Type type;
+    private Long roomId;
+    private Long hotelId;
+    private LocalDate startDate; // для AVAILABLE/UNAVAILABLE — null
+    private LocalDate endDate;
+    private Instant at;
+}
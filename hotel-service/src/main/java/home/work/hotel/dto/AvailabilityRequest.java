@@ -6,6 +6,7 @@ import lombok.NoArgsConstructor;
 import lombok.Builder;
 
 import java.time.LocalDate;
+import java.util.List;
 
 @Data
 @Builder
@@ -15,8 +16,10 @@ public class AvailabilityRequest {
     private LocalDate startDate;
     private LocalDate endDate;
     private String bookingId;
+    private List<String> bookingIds; // Пакетное освобождение: все брони номера одним вызовом
 
     private String requestId;
+    private List<String> requestIds; // requestId каждой брони из bookingIds, в том же порядке
     private String userId; // Для аудита
     private String userName; // Для аудита
 
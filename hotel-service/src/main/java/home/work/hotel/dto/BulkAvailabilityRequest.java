@@ -0,0 +1,18 @@
+package home.work.hotel.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkAvailabilityRequest {
+    private List<Long> roomIds; // либо список номеров,
+    private Long hotelId;       // либо все номера отеля
+    private List<DateRange> ranges;
+}
@@ -0,0 +1,15 @@
+package home.work.hotel.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+@Data
+@Builder
+public class DailyOccupancyResponse {
+    private LocalDate date;
+    private Integer bookedRooms;
+    private Long totalRooms;
+    private Double occupancyRate;
+}
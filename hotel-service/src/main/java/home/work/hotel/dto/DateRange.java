@@ -0,0 +1,19 @@
+package home.work.hotel.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DateRange {
+    private LocalDate startDate;
+    private LocalDate endDate; // не включается
+
+    public boolean isValid() {
+        return startDate != null && endDate != null && startDate.isBefore(endDate);
+    }
+}
@@ -0,0 +1,12 @@
+package home.work.hotel.dto;
+
+import lombok.Data;
+
+import java.time.LocalDate;
+
+@Data
+public class HoldRequest {
+    private LocalDate startDate;
+    private LocalDate endDate; // не включается
+    private Long ttlSeconds;   // null — время удержания по умолчанию
+}
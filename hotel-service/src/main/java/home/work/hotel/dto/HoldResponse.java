@@ -0,0 +1,17 @@
+package home.work.hotel.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+public class HoldResponse {
+    private Long holdId;
+    private Long roomId;
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private LocalDateTime expiresAt;
+}
@@ -0,0 +1,17 @@
+package home.work.hotel.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Строка импорта: type = hotel (ref, name, address) или room (hotelId или hotelRef, number)
+@Data
+@NoArgsConstructor
+public class ImportRecord {
+    private String type;
+    private String ref;
+    private String name;
+    private String address;
+    private Long hotelId;
+    private String hotelRef;
+    private Integer number;
+}
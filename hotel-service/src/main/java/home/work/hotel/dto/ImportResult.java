@@ -0,0 +1,15 @@
+package home.work.hotel.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class ImportResult {
+    public enum Status { CREATED, DUPLICATE, INVALID }
+
+    private Long line;
+    private Status status;
+    private Long id;
+    private String message;
+}
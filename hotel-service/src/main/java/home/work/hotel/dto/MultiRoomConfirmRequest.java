@@ -0,0 +1,17 @@
+package home.work.hotel.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MultiRoomConfirmRequest {
+    private List<RoomConfirmation> rooms;
+    private String requestId;
+}
@@ -0,0 +1,17 @@
+package home.work.hotel.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+@Data
+@Builder
+public class RoomAvailabilityResponse {
+    private Long roomId;
+    private Long hotelId;
+    private Integer number;
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private Boolean available;
+}
@@ -0,0 +1,18 @@
+package home.work.hotel.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Data
+@Builder
+public class RoomCalendarResponse {
+    private Long roomId;
+    private Integer number;
+    private Boolean available;
+    private LocalDate from;
+    // occupied[i] — занят ли номер в ночь from + i
+    private List<Boolean> occupied;
+}
@@ -0,0 +1,20 @@
+package home.work.hotel.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+@Data
+@AllArgsConstructor
+public class RoomConfirmResult {
+    // ROLLED_BACK — номер был свободен, но транзакция откатилась из-за конфликта по другому номеру
+    public enum Status { CONFIRMED, CONFLICT, ROLLED_BACK }
+
+    private Long roomId;
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private String bookingId;
+    private Status status;
+    private String message;
+}
@@ -0,0 +1,23 @@
+package home.work.hotel.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoomConfirmation {
+    private Long roomId;
+    private LocalDate startDate;
+    private LocalDate endDate; // не включается
+    private String bookingId;
+
+    public boolean isValid() {
+        return roomId != null && startDate != null && endDate != null && startDate.isBefore(endDate);
+    }
+}
@@ -0,0 +1,7 @@
+package home.work.hotel.exceptions;
+
+public class HoldLimitExceededException extends RuntimeException {
+    public HoldLimitExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package home.work.hotel.exceptions;
+
+public class HoldNotFoundException extends RuntimeException {
+    public HoldNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -24,4 +24,64 @@ public class HotelExceptionHandler {
         );
         return Mono.just(ResponseEntity.status(HttpStatus.CONFLICT).body(error));
     }
+
+    @ExceptionHandler(RoomAlreadyBookedException.class)
+    public Mono<ResponseEntity<ErrorResponse>> handleRoomAlreadyBooked(RoomAlreadyBookedException ex, ServerWebExchange exchange) {
+        ErrorResponse error = new ErrorResponse(
+                HttpStatus.CONFLICT.value(),
+                "Room Not Available",
+                ex.getMessage(),
+                exchange.getRequest().getPath().value(),
+                LocalDateTime.now()
+        );
+        return Mono.just(ResponseEntity.status(HttpStatus.CONFLICT).body(error));
+    }
+
+    @ExceptionHandler(HoldNotFoundException.class)
+    public Mono<ResponseEntity<ErrorResponse>> handleHoldNotFound(HoldNotFoundException ex, ServerWebExchange exchange) {
+        ErrorResponse error = new ErrorResponse(
+                HttpStatus.NOT_FOUND.value(),
+                "Hold Not Found",
+                ex.getMessage(),
+                exchange.getRequest().getPath().value(),
+                LocalDateTime.now()
+        );
+        return Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).body(error));
+    }
+
+    @ExceptionHandler(HoldLimitExceededException.class)
+    public Mono<ResponseEntity<ErrorResponse>> handleHoldLimitExceeded(HoldLimitExceededException ex, ServerWebExchange exchange) {
+        ErrorResponse error = new ErrorResponse(
+                HttpStatus.TOO_MANY_REQUESTS.value(),
+                "Hold Limit Exceeded",
+                ex.getMessage(),
+                exchange.getRequest().getPath().value(),
+                LocalDateTime.now()
+        );
+        return Mono.just(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(error));
+    }
+
+    @ExceptionHandler(RoomNotFoundException.class)
+    public Mono<ResponseEntity<ErrorResponse>> handleRoomNotFound(RoomNotFoundException ex, ServerWebExchange exchange) {
+        ErrorResponse error = new ErrorResponse(
+                HttpStatus.NOT_FOUND.value(),
+                "Room Not Found",
+                ex.getMessage(),
+                exchange.getRequest().getPath().value(),
+                LocalDateTime.now()
+        );
+        return Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).body(error));
+    }
+
+    @ExceptionHandler(RoomQueueFullException.class)
+    public Mono<ResponseEntity<ErrorResponse>> handleRoomQueueFull(RoomQueueFullException ex, ServerWebExchange exchange) {
+        ErrorResponse error = new ErrorResponse(
+                HttpStatus.SERVICE_UNAVAILABLE.value(),
+                "Room Queue Full",
+                ex.getMessage(),
+                exchange.getRequest().getPath().value(),
+                LocalDateTime.now()
+        );
+        return Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(error));
+    }
 }
@@ -0,0 +1,7 @@
+package home.work.hotel.exceptions;
+
+public class RoomNotFoundException extends RuntimeException {
+    public RoomNotFoundException(Long roomId) {
+        super("Room " + roomId + " not found");
+    }
+}
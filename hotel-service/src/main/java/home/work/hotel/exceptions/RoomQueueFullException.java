@@ -0,0 +1,7 @@
+package home.work.hotel.exceptions;
+
+public class RoomQueueFullException extends RuntimeException {
+    public RoomQueueFullException(String message) {
+        super(message);
+    }
+}
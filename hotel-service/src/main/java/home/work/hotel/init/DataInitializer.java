@@ -9,13 +9,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
 import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 @Component
 @RequiredArgsConstructor
 public class DataInitializer {
+    static final int ORDER = 0;
 
     private final HotelRepository hotelRepository;
     private final RoomRepository roomRepository;
@@ -23,10 +26,15 @@ public class DataInitializer {
 
     private static final Logger log = LoggerFactory.getLogger(DataInitializer.class);
 
+    // Наполнение завершается до следующих слушателей ApplicationReadyEvent: IndexInitializer строит индексы
+    // уже по записанным данным (они пишутся в обход RoomService)
     @EventListener(ApplicationReadyEvent.class)
+    @Order(ORDER)
     public void init() {
         // Очистка и создание тестовых данных
-        databaseClient.sql("DELETE FROM room_blocked_dates").fetch().rowsUpdated()
+        databaseClient.sql("DELETE FROM room_blocked_ranges").fetch().rowsUpdated()
+                .then(databaseClient.sql("DELETE FROM room_blocked_ranges_archive").fetch().rowsUpdated())
+                .then(databaseClient.sql("DELETE FROM hotel_daily_occupancy").fetch().rowsUpdated())
                 .then(databaseClient.sql("DELETE FROM rooms").fetch().rowsUpdated())
                 .then(databaseClient.sql("DELETE FROM hotels").fetch().rowsUpdated())
                 .thenMany(
@@ -41,15 +49,18 @@ public class DataInitializer {
                                     Room.builder().hotelId(hotelId).available(true).number(101).timesBooked(3).build(),
                                     Room.builder().hotelId(hotelId).available(true).number(102).timesBooked(2).build(),
                                     Room.builder().hotelId(hotelId).available(false).number(103).timesBooked(1).build(),
-                                    Room.builder().hotelId(hotelId).available(true).number(201).build(),
-                                    Room.builder().hotelId(hotelId).available(true).number(202).build()
+                                    Room.builder().hotelId(hotelId).available(true).number(201).timesBooked(0).build(),
+                                    Room.builder().hotelId(hotelId).available(true).number(202).timesBooked(0).build()
                             )
                             .flatMap(roomRepository::save);
                 })
-                .subscribe(
-                        room -> log.info("Initialized room: {} for hotel: {}", room.getId(), room.getHotelId()),
-                        error -> log.info("Error initializing data: {}", String.valueOf(error)),
-                        () -> log.info("Data initialization completed")
-                );
+                .doOnNext(room -> log.info("Initialized room: {} for hotel: {}", room.getId(), room.getHotelId()))
+                .then()
+                .doOnSuccess(v -> log.info("Data initialization completed"))
+                .onErrorResume(error -> {
+                    log.info("Error initializing data: {}", String.valueOf(error));
+                    return Mono.empty();
+                })
+                .block();
     }
 }
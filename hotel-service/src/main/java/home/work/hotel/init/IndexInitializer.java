@@ -0,0 +1,40 @@
+package home.work.hotel.init;
+
+import home.work.hotel.services.RoomService;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+
+/**
+ * Строит индексы занятости и рейтинга при каждом старте, независимо от наполнения данными.
+ * Выполняется после DataInitializer (порядок слушателей ApplicationReadyEvent); до готовности
+ * индексов RoomService отвечает запросами к БД.
+ */
+@Component
+@RequiredArgsConstructor
+public class IndexInitializer {
+    static final int ORDER = DataInitializer.ORDER + 1;
+
+    private static final Logger log = LoggerFactory.getLogger(IndexInitializer.class);
+
+    private final RoomService roomService;
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(ORDER)
+    public void init() {
+        roomService.rebuildIndexes()
+                .retryWhen(Retry.backoff(3, Duration.ofSeconds(1)))
+                .subscribe(
+                        null,
+                        error -> log.warn("Index build failed, queries stay on the database: {}", String.valueOf(error)),
+                        () -> log.info("Indexes ready")
+                );
+    }
+}
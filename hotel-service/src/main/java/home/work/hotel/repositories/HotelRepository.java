@@ -1,11 +1,22 @@
 package home.work.hotel.repositories;
 
 import home.work.hotel.entities.Hotel;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Transactional
 public interface HotelRepository extends ReactiveCrudRepository<Hotel, Long> {
     Mono<Hotel> findByName(String name);
+
+    @Query("""
+            SELECT * FROM hotels
+            WHERE id > :afterId
+            ORDER BY id
+            LIMIT :limit
+            """)
+    Flux<Hotel> findPage(@Param("afterId") Long afterId, @Param("limit") int limit);
 }
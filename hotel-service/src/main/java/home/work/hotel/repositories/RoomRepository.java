@@ -38,9 +38,10 @@ public interface RoomRepository extends ReactiveCrudRepository<Room, Long> {
               AND (:hotelId IS NULL OR r.hotel_id = :hotelId)
               AND NOT EXISTS (
                   SELECT 1
-                  FROM room_blocked_dates b
+                  FROM room_blocked_ranges b
                   WHERE b.room_id = r.id
-                    AND b.blocked_date BETWEEN :startDate AND :endDate
+                    AND b.start_date < :endDate
+                    AND b.end_date > :startDate
               )
             ORDER BY r.times_booked ASC, r.id ASC
             """)
@@ -48,4 +49,12 @@ public interface RoomRepository extends ReactiveCrudRepository<Room, Long> {
             @Param("hotelId") Long hotelId,
             @Param("startDate") LocalDate startDate,
             @Param("endDate") LocalDate endDate);
+
+    @Query("""
+            SELECT * FROM rooms
+            WHERE id > :afterId
+            ORDER BY id
+            LIMIT :limit
+            """)
+    Flux<Room> findPage(@Param("afterId") Long afterId, @Param("limit") int limit);
 }
@@ -0,0 +1,46 @@
+package home.work.hotel.services;
+
+import home.work.hotel.dto.AvailabilityEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.Objects;
+
+/**
+ * Поток изменений занятости номеров внутри процесса. Публикует RoomService после фиксации изменений.
+ * У каждого подписчика свой ограниченный буфер: медленный клиент теряет самые старые события,
+ * но не задерживает остальных и не копит память.
+ */
+@Component
+public class AvailabilityEventBus {
+    private static final Logger log = LoggerFactory.getLogger(AvailabilityEventBus.class);
+
+    private final Sinks.Many<AvailabilityEvent> sink = Sinks.many().multicast().directBestEffort();
+    private final int bufferSize;
+
+    public AvailabilityEventBus(@Value("${hotel.events.buffer-size:256}") int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    // Публикация из разных потоков сериализуется: Sinks.Many не допускает параллельных emit
+    public synchronized void publish(AvailabilityEvent event) {
+        Sinks.EmitResult result = sink.tryEmitNext(event);
+        if (result.isFailure() && result != Sinks.EmitResult.FAIL_ZERO_SUBSCRIBER) {
+            log.warn("Availability event dropped | roomId={}, result={}", event.getRoomId(), result);
+        }
+    }
+
+    // hotelId == null — события всех отелей
+    public Flux<AvailabilityEvent> subscribe(Long hotelId) {
+        return sink.asFlux()
+                .filter(event -> hotelId == null || Objects.equals(hotelId, event.getHotelId()))
+                .onBackpressureBuffer(bufferSize,
+                        dropped -> log.debug("Slow subscriber, event dropped | roomId={}", dropped.getRoomId()),
+                        BufferOverflowStrategy.DROP_OLDEST);
+    }
+}
@@ -0,0 +1,110 @@
+package home.work.hotel.services;
+
+import home.work.compaction.ArchiveCompactor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Фоновое уплотнение room_blocked_ranges: интервалы, закончившиеся раньше чем retention-days назад,
+ * переносятся в room_blocked_ranges_archive. Удержания, так и не ставшие бронью, не архивируются, а удаляются.
+ * Занятость по прошедшим дням остаётся в агрегате hotel_daily_occupancy.
+ */
+@Component
+public class BlockedRangeCompactor extends ArchiveCompactor<BlockedRangeCompactor.PastRange> {
+    private final DatabaseClient databaseClient;
+    private final RoomAvailabilityIndex availabilityIndex;
+    private final RoomWriteQueue writeQueue;
+    private final int retentionDays;
+
+    public BlockedRangeCompactor(DatabaseClient databaseClient,
+                                 TransactionalOperator transactionalOperator,
+                                 RoomAvailabilityIndex availabilityIndex,
+                                 RoomWriteQueue writeQueue,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${hotel.compaction.retention-days:30}") int retentionDays,
+                                 @Value("${hotel.compaction.batch-size:500}") int batchSize) {
+        super("room_blocked_ranges", transactionalOperator, meterRegistry, batchSize);
+        this.databaseClient = databaseClient;
+        this.availabilityIndex = availabilityIndex;
+        this.writeQueue = writeQueue;
+        this.retentionDays = retentionDays;
+    }
+
+    @Scheduled(initialDelayString = "${hotel.compaction.initial-delay:PT1M}",
+            fixedDelayString = "${hotel.compaction.interval:PT1H}")
+    public void run() {
+        trigger(LocalDate.now().minusDays(retentionDays));
+    }
+
+    @Override
+    protected Flux<PastRange> selectBatch(LocalDate cutoff, int batchSize) {
+        return databaseClient.sql("""
+                        SELECT id, room_id, start_date, end_date FROM room_blocked_ranges
+                        WHERE end_date <= :cutoff
+                        ORDER BY end_date, id
+                        LIMIT :batchSize
+                        """)
+                .bind("cutoff", cutoff)
+                .bind("batchSize", batchSize)
+                .map(BlockedRangeCompactor::toPastRange)
+                .all();
+    }
+
+    // Через очередь номеров, как и остальные изменения интервалов: перенос идёт после всех ранее поставленных
+    // изменений этих номеров, а индекс меняется в порядке фиксации
+    @Override
+    protected Mono<List<PastRange>> moveBatch(List<PastRange> ranges, Mono<List<PastRange>> transaction) {
+        return writeQueue.submitAll(
+                ranges.stream().map(PastRange::roomId).distinct().toList(),
+                transaction.doOnNext(moved -> moved.forEach(range ->
+                        availabilityIndex.release(range.roomId(), range.startDate(), range.endDate()))));
+    }
+
+    // Выполняется уже в очереди номеров: интервал, снятый или заменённый после выбора пачки, сюда не попадёт —
+    // переносятся только строки, которые всё ещё есть. В архив попадают только брони; неподтверждённые
+    // удержания прошедших дат просто удаляются
+    @Override
+    protected Mono<List<PastRange>> archive(List<PastRange> ranges) {
+        List<Long> ids = ranges.stream().map(PastRange::id).toList();
+        return databaseClient.sql("""
+                        INSERT INTO room_blocked_ranges_archive (id, room_id, start_date, end_date, booking_id)
+                        SELECT id, room_id, start_date, end_date, booking_id FROM room_blocked_ranges
+                        WHERE id IN (:ids)
+                        AND hold_expires_at IS NULL
+                        """)
+                .bind("ids", ids)
+                .fetch()
+                .rowsUpdated()
+                .thenMany(databaseClient.sql("""
+                                SELECT id, room_id, start_date, end_date FROM OLD TABLE (
+                                    DELETE FROM room_blocked_ranges WHERE id IN (:ids)
+                                )
+                                """)
+                        .bind("ids", ids)
+                        .map(BlockedRangeCompactor::toPastRange)
+                        .all())
+                .collectList();
+    }
+
+    private static PastRange toPastRange(Row row, RowMetadata metadata) {
+        return new PastRange(
+                row.get("id", Long.class),
+                row.get("room_id", Long.class),
+                row.get("start_date", LocalDate.class),
+                row.get("end_date", LocalDate.class));
+    }
+
+    record PastRange(Long id, Long roomId, LocalDate startDate, LocalDate endDate) {
+    }
+}
@@ -0,0 +1,75 @@
+package home.work.hotel.services;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import home.work.hotel.dto.HotelResponse;
+import home.work.hotel.dto.RoomResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Read-through кэш каталога: список отелей и номера по отелям.
+ * Ограничен по размеру и времени жизни; записи сбрасываются точечно —
+ * при добавлении отеля список отелей, при изменении номера только его отель.
+ * Статистика (попадания, промахи, вытеснения) публикуется в Micrometer как cache.*.
+ */
+@Component
+public class CatalogCache {
+    private static final String ALL_HOTELS = "all";
+
+    private final AsyncCache<String, List<HotelResponse>> hotels;
+    private final AsyncCache<Long, List<RoomResponse>> roomsByHotel;
+
+    public CatalogCache(MeterRegistry meterRegistry,
+                        @Value("${hotel.catalog-cache.max-size:1000}") long maxSize,
+                        @Value("${hotel.catalog-cache.ttl:10m}") Duration ttl) {
+        this.hotels = Caffeine.newBuilder()
+                .maximumSize(1)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .buildAsync();
+        this.roomsByHotel = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, hotels, "catalog.hotels");
+        CaffeineCacheMetrics.monitor(meterRegistry, roomsByHotel, "catalog.rooms");
+    }
+
+    // Список отсортирован по id — по нему можно искать начало страницы двоичным поиском
+    public Mono<List<HotelResponse>> hotels(Flux<HotelResponse> loader) {
+        // Future общий для всех ожидающих: отмена одного подписчика не отменяет загрузку.
+        // Ошибка загрузки не кэшируется: Caffeine удаляет неуспешный future
+        return Mono.fromFuture(hotels.get(ALL_HOTELS, (key, executor) -> loader
+                .sort(Comparator.comparing(HotelResponse::getId))
+                .collectList()
+                .toFuture()), true);
+    }
+
+    public Flux<RoomResponse> rooms(Long hotelId, Flux<RoomResponse> loader) {
+        return Mono.fromFuture(roomsByHotel.get(hotelId, (key, executor) -> loader.collectList().toFuture()), true)
+                .flatMapIterable(list -> list);
+    }
+
+    public void evictHotels() {
+        hotels.synchronous().invalidate(ALL_HOTELS);
+    }
+
+    public void evictRooms(Long hotelId) {
+        roomsByHotel.synchronous().invalidate(hotelId);
+    }
+
+    public void evictAll() {
+        hotels.synchronous().invalidateAll();
+        roomsByHotel.synchronous().invalidateAll();
+    }
+}
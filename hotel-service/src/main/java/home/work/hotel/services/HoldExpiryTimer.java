@@ -0,0 +1,57 @@
+package home.work.hotel.services;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Истечение удержаний номеров на хешированном колесе таймеров: постановка и отмена — O(1),
+ * один поток продвигает колесо раз в tick и запускает только истёкшие задачи.
+ * Периодический просмотр таблицы не нужен; после перезапуска удержания заново ставятся из БД.
+ */
+@Component
+public class HoldExpiryTimer implements DisposableBean {
+    private final HashedWheelTimer timer;
+    private final Map<Long, Timeout> timeouts = new ConcurrentHashMap<>();
+
+    public HoldExpiryTimer(@Value("${hotel.holds.tick:PT0.1S}") Duration tick,
+                           @Value("${hotel.holds.wheel-size:512}") int wheelSize) {
+        this.timer = new HashedWheelTimer(new DefaultThreadFactory("hold-expiry", true),
+                tick.toMillis(), TimeUnit.MILLISECONDS, wheelSize);
+    }
+
+    public void schedule(Long holdId, Duration delay, Runnable onExpiry) {
+        Timeout timeout = timer.newTimeout(t -> {
+            timeouts.remove(holdId, t);
+            onExpiry.run();
+        }, Math.max(0, delay.toMillis()), TimeUnit.MILLISECONDS);
+        Timeout previous = timeouts.put(holdId, timeout);
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    public void cancel(Long holdId) {
+        Timeout timeout = timeouts.remove(holdId);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    public int pending() {
+        return timeouts.size();
+    }
+
+    @Override
+    public void destroy() {
+        timer.stop();
+    }
+}
@@ -2,20 +2,28 @@ package home.work.hotel.services;
 
 import home.work.hotel.dto.HotelRequest;
 import home.work.hotel.dto.HotelResponse;
+import home.work.hotel.dto.RoomCalendarResponse;
 import home.work.hotel.entities.Hotel;
 import home.work.hotel.mappers.HotelMapper;
 import home.work.hotel.repositories.HotelRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
 
 @Service
 @RequiredArgsConstructor
 public class HotelService {
     private final HotelRepository hotelRepository;
     private final HotelMapper mapper;
+    private final DatabaseClient databaseClient;
+    private final CatalogCache catalogCache;
 
     public Mono<HotelResponse> addHotel(HotelRequest hotel) {
         return hotelRepository.save(Hotel
@@ -24,10 +32,71 @@ public class HotelService {
                         .address(hotel.getAddress())
                         .build()
                 )
+                .doOnNext(saved -> catalogCache.evictHotels())
                 .map(mapper::toDto);
     }
 
     public Flux<HotelResponse> getHotels() {
-        return hotelRepository.findAll().map(mapper::toDto);
+        return catalogCache.hotels(hotelRepository.findAll().map(mapper::toDto))
+                .flatMapIterable(hotels -> hotels);
+    }
+
+    // Keyset-пагинация по первичному ключу, как у номеров: страница читается из БД, без полного списка в памяти
+    public Flux<HotelResponse> getHotels(Long afterId, int limit) {
+        return hotelRepository.findPage(afterId != null ? afterId : 0L, limit)
+                .map(mapper::toDto);
+    }
+
+    // Матрица «номер × день» за один упорядоченный проход по rooms LEFT JOIN room_blocked_ranges.
+    // В памяти держим интервалы только текущего номера, строки отдаются по мере чтения.
+    public Flux<RoomCalendarResponse> getCalendar(Long hotelId, LocalDate from, LocalDate to) {
+        String sql = """
+                SELECT r.id, r.number, r.available, b.start_date, b.end_date
+                FROM rooms r
+                LEFT JOIN room_blocked_ranges b
+                    ON b.room_id = r.id
+                    AND b.start_date < :to
+                    AND b.end_date > :from
+                WHERE r.hotel_id = :hotelId
+                ORDER BY r.id, b.start_date
+                """;
+        return databaseClient.sql(sql)
+                .bind("hotelId", hotelId)
+                .bind("from", from)
+                .bind("to", to)
+                .map((row, metadata) -> new CalendarRow(
+                        row.get("id", Long.class),
+                        row.get("number", Integer.class),
+                        row.get("available", Boolean.class),
+                        row.get("start_date", LocalDate.class),
+                        row.get("end_date", LocalDate.class)))
+                .all()
+                .bufferUntilChanged(CalendarRow::roomId)
+                .map(rows -> toCalendar(rows, from, to));
+    }
+
+    private static RoomCalendarResponse toCalendar(List<CalendarRow> rows, LocalDate from, LocalDate to) {
+        Boolean[] occupied = new Boolean[(int) ChronoUnit.DAYS.between(from, to)];
+        Arrays.fill(occupied, Boolean.FALSE);
+        for (CalendarRow row : rows) {
+            // Для номера без броней LEFT JOIN даёт одну строку с пустыми датами
+            if (row.startDate() == null) {
+                continue;
+            }
+            long start = Math.max(0, ChronoUnit.DAYS.between(from, row.startDate()));
+            long end = Math.min(occupied.length, ChronoUnit.DAYS.between(from, row.endDate()));
+            Arrays.fill(occupied, (int) start, (int) end, Boolean.TRUE);
+        }
+        CalendarRow first = rows.get(0);
+        return RoomCalendarResponse.builder()
+                .roomId(first.roomId())
+                .number(first.number())
+                .available(first.available())
+                .from(from)
+                .occupied(Arrays.asList(occupied))
+                .build();
+    }
+
+    private record CalendarRow(Long roomId, Integer number, Boolean available, LocalDate startDate, LocalDate endDate) {
     }
 }
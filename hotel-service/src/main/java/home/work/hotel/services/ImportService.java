@@ -0,0 +1,213 @@
+package home.work.hotel.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import home.work.hotel.dto.ImportRecord;
+import home.work.hotel.dto.ImportResult;
+import home.work.hotel.dto.ImportResult.Status;
+import home.work.hotel.entities.Room;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static home.work.exceptions.ExceptionProcessor.isUniqueConstraintViolation;
+
+/**
+ * Потоковый импорт отелей и номеров из NDJSON или CSV.
+ * Строки читаются по мере поступления и пишутся пачками по batchSize, каждая пачка — одна транзакция;
+ * в памяти держится только текущая пачка и соответствие ref → id для отелей из этого импорта.
+ * Дубликат номера (UNIQUE (hotel_id, number)) или ошибка формата не прерывают импорт —
+ * по каждой строке возвращается свой результат.
+ *
+ * CSV: {@code hotel,<ref>,<name>,<address>} и {@code room,<hotelRef или id отеля>,<number>}.
+ */
+@Service
+public class ImportService {
+    private static final Logger log = LoggerFactory.getLogger(ImportService.class);
+
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+    private final ObjectMapper objectMapper;
+    private final RoomRankingIndex rankingIndex;
+    private final CatalogCache catalogCache;
+    private final int batchSize;
+
+    public ImportService(DatabaseClient databaseClient,
+                         TransactionalOperator transactionalOperator,
+                         ObjectMapper objectMapper,
+                         RoomRankingIndex rankingIndex,
+                         CatalogCache catalogCache,
+                         @Value("${hotel.import.batch-size:500}") int batchSize) {
+        this.databaseClient = databaseClient;
+        this.transactionalOperator = transactionalOperator;
+        this.objectMapper = objectMapper;
+        this.rankingIndex = rankingIndex;
+        this.catalogCache = catalogCache;
+        this.batchSize = batchSize;
+    }
+
+    public Flux<ImportResult> importLines(Flux<String> lines, boolean csv) {
+        Map<String, Long> hotelRefs = new ConcurrentHashMap<>();
+        return lines
+                .index((index, line) -> new NumberedLine(index + 1, line.strip()))
+                .filter(line -> !line.text().isEmpty() && !(csv && line.number() == 1 && line.text().startsWith("type,")))
+                .buffer(batchSize)
+                .concatMap(batch -> importBatch(batch, csv, hotelRefs));
+    }
+
+    private Flux<ImportResult> importBatch(List<NumberedLine> batch, boolean csv, Map<String, Long> hotelRefs) {
+        List<Room> created = new ArrayList<>();
+        return Flux.fromIterable(batch)
+                .concatMap(line -> importLine(line, csv, hotelRefs, created))
+                .collectList()
+                .as(transactionalOperator::transactional)
+                .doOnNext(results -> {
+                    // Индексы и кэш — только после фиксации пачки
+                    created.forEach(rankingIndex::put);
+                    created.stream().map(Room::getHotelId).distinct().forEach(catalogCache::evictRooms);
+                    if (results.stream().anyMatch(r -> r.getStatus() == Status.CREATED)) {
+                        catalogCache.evictHotels();
+                    }
+                    log.info("Import batch committed | lines={}, rooms={}", results.size(), created.size());
+                })
+                .flatMapIterable(results -> results);
+    }
+
+    private Mono<ImportResult> importLine(NumberedLine line, boolean csv, Map<String, Long> hotelRefs, List<Room> created) {
+        ImportRecord record;
+        try {
+            record = csv ? parseCsv(line.text()) : objectMapper.readValue(line.text(), ImportRecord.class);
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            return Mono.just(invalid(line, "Cannot parse line: " + e.getMessage()));
+        }
+        if ("hotel".equalsIgnoreCase(record.getType())) {
+            return importHotel(line, record, hotelRefs);
+        }
+        if ("room".equalsIgnoreCase(record.getType())) {
+            return importRoom(line, record, hotelRefs, created);
+        }
+        return Mono.just(invalid(line, "Unknown type: " + record.getType()));
+    }
+
+    private Mono<ImportResult> importHotel(NumberedLine line, ImportRecord record, Map<String, Long> hotelRefs) {
+        if (record.getName() == null || record.getName().isBlank()) {
+            return Mono.just(invalid(line, "Hotel name is required"));
+        }
+        if (record.getRef() != null && hotelRefs.containsKey(record.getRef())) {
+            return Mono.just(new ImportResult(line.number(), Status.DUPLICATE, hotelRefs.get(record.getRef()),
+                    "Hotel ref " + record.getRef() + " already imported"));
+        }
+        String sql = """
+                SELECT id FROM FINAL TABLE (
+                    INSERT INTO hotels (name, address) VALUES (:name, :address)
+                )
+                """;
+        return databaseClient.sql(sql)
+                .bind("name", record.getName())
+                .bind("address", record.getAddress() != null ? record.getAddress() : "")
+                .map((row, metadata) -> row.get("id", Long.class))
+                .one()
+                .map(id -> {
+                    if (record.getRef() != null) {
+                        hotelRefs.put(record.getRef(), id);
+                    }
+                    return new ImportResult(line.number(), Status.CREATED, id, null);
+                });
+    }
+
+    private Mono<ImportResult> importRoom(NumberedLine line, ImportRecord record, Map<String, Long> hotelRefs, List<Room> created) {
+        Long hotelId = record.getHotelId() != null ? record.getHotelId() : hotelRefs.get(record.getHotelRef());
+        if (hotelId == null || record.getNumber() == null) {
+            return Mono.just(invalid(line, "Room requires number and a known hotelId or hotelRef"));
+        }
+        // Дубликат отсекается условием вставки; UNIQUE (hotel_id, number) остаётся защитой от гонок
+        String sql = """
+                SELECT id FROM FINAL TABLE (
+                    INSERT INTO rooms (hotel_id, number, available, times_booked)
+                    SELECT h.id, :number, true, 0 FROM hotels h
+                    WHERE h.id = :hotelId
+                    AND NOT EXISTS (
+                        SELECT 1 FROM rooms r WHERE r.hotel_id = h.id AND r.number = :number
+                    )
+                )
+                """;
+        return databaseClient.sql(sql)
+                .bind("hotelId", hotelId)
+                .bind("number", record.getNumber())
+                .map((row, metadata) -> row.get("id", Long.class))
+                .one()
+                .map(id -> {
+                    created.add(Room.builder()
+                            .id(id)
+                            .hotelId(hotelId)
+                            .number(record.getNumber())
+                            .available(true)
+                            .timesBooked(0)
+                            .build());
+                    return new ImportResult(line.number(), Status.CREATED, id, null);
+                })
+                .switchIfEmpty(Mono.defer(() -> hotelExists(hotelId)
+                        .map(exists -> exists
+                                ? duplicate(line, record.getNumber(), hotelId)
+                                : invalid(line, "Hotel " + hotelId + " not found"))))
+                .onErrorResume(throwable -> isUniqueConstraintViolation(throwable),
+                        e -> Mono.just(duplicate(line, record.getNumber(), hotelId)));
+    }
+
+    private Mono<Boolean> hotelExists(Long hotelId) {
+        return databaseClient.sql("SELECT COUNT(*) AS count FROM hotels WHERE id = :hotelId")
+                .bind("hotelId", hotelId)
+                .map((row, metadata) -> row.get("count", Long.class) > 0)
+                .one();
+    }
+
+    private static ImportRecord parseCsv(String text) {
+        String[] columns = text.split(",", -1);
+        ImportRecord record = new ImportRecord();
+        record.setType(columns[0].strip());
+        if ("hotel".equalsIgnoreCase(record.getType())) {
+            // Адрес — последняя колонка и может содержать запятые
+            String[] hotel = text.split(",", 4);
+            if (hotel.length < 3) {
+                throw new IllegalArgumentException("expected hotel,ref,name,address");
+            }
+            record.setRef(hotel[1].strip().isEmpty() ? null : hotel[1].strip());
+            record.setName(hotel[2].strip());
+            record.setAddress(hotel.length > 3 ? hotel[3].strip() : null);
+        } else if ("room".equalsIgnoreCase(record.getType())) {
+            if (columns.length != 3) {
+                throw new IllegalArgumentException("expected room,hotel,number");
+            }
+            String hotel = columns[1].strip();
+            if (hotel.chars().allMatch(Character::isDigit) && !hotel.isEmpty()) {
+                record.setHotelId(Long.parseLong(hotel));
+            } else {
+                record.setHotelRef(hotel);
+            }
+            record.setNumber(Integer.parseInt(columns[2].strip()));
+        }
+        return record;
+    }
+
+    private static ImportResult duplicate(NumberedLine line, Integer number, Long hotelId) {
+        return new ImportResult(line.number(), Status.DUPLICATE, null,
+                "Room " + number + " already exists in hotel " + hotelId);
+    }
+
+    private static ImportResult invalid(NumberedLine line, String message) {
+        return new ImportResult(line.number(), Status.INVALID, null, message);
+    }
+
+    private record NumberedLine(long number, String text) {
+    }
+}
@@ -0,0 +1,86 @@
+package home.work.hotel.services;
+
+import home.work.hotel.dto.DailyOccupancyResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+
+import static home.work.exceptions.ExceptionProcessor.isUniqueConstraintViolation;
+
+/**
+ * Занятость отелей по дням из агрегата hotel_daily_occupancy.
+ * Счётчики меняются инкрементально вместе с room_blocked_ranges, поэтому чтение
+ * диапазона — это просмотр первичного ключа (hotel_id, stay_date), без GROUP BY по броням.
+ */
+@Service
+@RequiredArgsConstructor
+public class OccupancyService {
+    private final DatabaseClient databaseClient;
+
+    // Вызывается внутри транзакции блокировки/освобождения: одна строка на ночь [start, end)
+    public Mono<Void> adjust(Long roomId, LocalDate start, LocalDate end, int delta) {
+        String sql = """
+                MERGE INTO hotel_daily_occupancy o
+                USING (
+                    SELECT r.hotel_id, DATEADD(DAY, n.X, CAST(:start AS DATE)) AS stay_date
+                    FROM rooms r, SYSTEM_RANGE(0, :lastNight) n
+                    WHERE r.id = :roomId
+                ) s
+                ON o.hotel_id = s.hotel_id AND o.stay_date = s.stay_date
+                WHEN MATCHED THEN UPDATE SET booked_rooms = o.booked_rooms + :delta
+                WHEN NOT MATCHED THEN INSERT (hotel_id, stay_date, booked_rooms) VALUES (s.hotel_id, s.stay_date, :delta)
+                """;
+        Mono<Long> merge = Mono.defer(() -> databaseClient.sql(sql)
+                .bind("roomId", roomId)
+                .bind("start", start)
+                .bind("lastNight", ChronoUnit.DAYS.between(start, end) - 1)
+                .bind("delta", delta)
+                .fetch()
+                .rowsUpdated());
+        // Две транзакции могут одновременно вставить строку одного дня — повтор попадёт в ветку UPDATE
+        return merge
+                .onErrorResume(throwable -> isUniqueConstraintViolation(throwable), e -> merge)
+                .then();
+    }
+
+    public Flux<DailyOccupancyResponse> getOccupancy(Long hotelId, LocalDate from, LocalDate to) {
+        Mono<Long> totalRooms = databaseClient.sql("SELECT COUNT(*) AS total FROM rooms WHERE hotel_id = :hotelId")
+                .bind("hotelId", hotelId)
+                .map((row, metadata) -> row.get("total", Long.class))
+                .one();
+        Mono<Map<LocalDate, Integer>> booked = databaseClient.sql("""
+                        SELECT stay_date, booked_rooms FROM hotel_daily_occupancy
+                        WHERE hotel_id = :hotelId
+                        AND stay_date >= :from
+                        AND stay_date < :to
+                        """)
+                .bind("hotelId", hotelId)
+                .bind("from", from)
+                .bind("to", to)
+                .map((row, metadata) -> Map.entry(
+                        row.get("stay_date", LocalDate.class),
+                        row.get("booked_rooms", Integer.class)))
+                .all()
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+
+        // Дни без броней в агрегате отсутствуют — отдаём их с нулём
+        return Mono.zip(totalRooms, booked)
+                .flatMapMany(result -> Flux.fromStream(from.datesUntil(to))
+                        .map(date -> {
+                            int rooms = result.getT2().getOrDefault(date, 0);
+                            long total = result.getT1();
+                            return DailyOccupancyResponse.builder()
+                                    .date(date)
+                                    .bookedRooms(rooms)
+                                    .totalRooms(total)
+                                    .occupancyRate(total > 0 ? (double) rooms / total : 0.0)
+                                    .build();
+                        }));
+    }
+}
@@ -0,0 +1,154 @@
+package home.work.hotel.services;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Индекс занятости номеров в памяти: для каждого номера хранится битовая карта дней
+ * (бит = смещение в днях от начала карты). Источником истины остаётся БД,
+ * индекс строится из room_blocked_ranges при старте и обновляется после фиксации изменений.
+ * Изменения во время перестроения не теряются: они повторяются поверх прочитанного снимка перед заменой.
+ * Все диапазоны полуоткрытые: [from, to).
+ */
+@Component
+@RequiredArgsConstructor
+public class RoomAvailabilityIndex {
+    private static final Logger log = LoggerFactory.getLogger(RoomAvailabilityIndex.class);
+
+    private final DatabaseClient databaseClient;
+
+    private volatile Map<Long, RoomCalendar> calendars = new ConcurrentHashMap<>();
+    private volatile boolean ready = false;
+    // Изменения, пришедшие во время перестроения; null — перестроение не идёт
+    private List<Consumer<Map<Long, RoomCalendar>>> journal;
+
+    // Строится при старте (RoomService.rebuildIndexes из IndexInitializer); до готовности isReady() == false
+    public Mono<Void> rebuild() {
+        return Mono.defer(() -> {
+            List<Consumer<Map<Long, RoomCalendar>>> changes = new ArrayList<>();
+            synchronized (this) {
+                if (journal != null) {
+                    log.info("Availability index rebuild already in progress");
+                    return Mono.empty();
+                }
+                journal = changes;
+            }
+            Map<Long, RoomCalendar> fresh = new ConcurrentHashMap<>();
+            return databaseClient.sql("SELECT room_id, start_date, end_date FROM room_blocked_ranges")
+                    .map((row, metadata) -> {
+                        Long roomId = row.get("room_id", Long.class);
+                        LocalDate start = row.get("start_date", LocalDate.class);
+                        LocalDate end = row.get("end_date", LocalDate.class);
+                        fresh.computeIfAbsent(roomId, id -> new RoomCalendar()).set(start.toEpochDay(), end.toEpochDay());
+                        return roomId;
+                    })
+                    .all()
+                    .count()
+                    .doOnNext(rows -> {
+                        synchronized (this) {
+                            // Изменения, пришедшие во время чтения, повторяются поверх снимка. Повтор блокировки
+                            // или освобождения уже учтённых в снимке дней ничего не меняет.
+                            changes.forEach(change -> change.accept(fresh));
+                            calendars = fresh;
+                            journal = null;
+                        }
+                        ready = true;
+                        log.info("Availability index built | rooms={}, blockedRanges={}, replayed={}",
+                                fresh.size(), rows, changes.size());
+                    })
+                    .doFinally(signal -> {
+                        synchronized (this) {
+                            if (journal == changes) {
+                                journal = null;
+                            }
+                        }
+                    })
+                    .then();
+        });
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public boolean isFree(Long roomId, LocalDate from, LocalDate to) {
+        RoomCalendar calendar = calendars.get(roomId);
+        return calendar == null || calendar.isFree(from.toEpochDay(), to.toEpochDay());
+    }
+
+    public void block(Long roomId, LocalDate from, LocalDate to) {
+        apply(map -> map.computeIfAbsent(roomId, id -> new RoomCalendar())
+                .set(from.toEpochDay(), to.toEpochDay()));
+    }
+
+    public void release(Long roomId, LocalDate from, LocalDate to) {
+        apply(map -> {
+            RoomCalendar calendar = map.get(roomId);
+            if (calendar != null) {
+                calendar.clear(from.toEpochDay(), to.toEpochDay());
+            }
+        });
+    }
+
+    // Изменение применяется к текущей карте и, пока идёт перестроение, запоминается для новой
+    private synchronized void apply(Consumer<Map<Long, RoomCalendar>> change) {
+        change.accept(calendars);
+        if (journal != null) {
+            journal.add(change);
+        }
+    }
+
+    private static final class RoomCalendar {
+        private final BitSet days = new BitSet();
+        private long origin;
+
+        synchronized void set(long from, long to) {
+            if (from >= to) {
+                return;
+            }
+            if (days.isEmpty()) {
+                origin = from;
+            } else if (from < origin) {
+                rebase(from);
+            }
+            days.set((int) (from - origin), (int) (to - origin));
+        }
+
+        synchronized void clear(long from, long to) {
+            if (days.isEmpty() || to <= origin || from >= to) {
+                return;
+            }
+            days.clear((int) Math.max(0, from - origin), (int) (to - origin));
+        }
+
+        synchronized boolean isFree(long from, long to) {
+            if (days.isEmpty() || to <= origin || from >= to) {
+                return true;
+            }
+            int next = days.nextSetBit((int) Math.max(0, from - origin));
+            return next < 0 || next >= to - origin;
+        }
+
+        // Сдвигаем карту, если пришла дата раньше текущего начала
+        private void rebase(long newOrigin) {
+            int shift = (int) (origin - newOrigin);
+            BitSet shifted = new BitSet(days.length() + shift);
+            days.stream().forEach(i -> shifted.set(i + shift));
+            days.clear();
+            days.or(shifted);
+            origin = newOrigin;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package home.work.hotel.services;
+
+import home.work.hotel.entities.Room;
+import home.work.hotel.repositories.RoomRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
+
+/**
+ * Рейтинг доступных номеров в памяти: упорядоченные множества по (timesBooked, id)
+ * для каждого отеля и общее по всем отелям. Обход идёт в порядке рекомендаций,
+ * поэтому для первых K номеров не нужна сортировка всей таблицы.
+ */
+@Component
+@RequiredArgsConstructor
+public class RoomRankingIndex {
+    private static final Logger log = LoggerFactory.getLogger(RoomRankingIndex.class);
+
+    private static final Comparator<Room> RANK_ORDER = Comparator
+            .comparingInt(RoomRankingIndex::timesBooked)
+            .thenComparing(Room::getId);
+
+    private final RoomRepository roomRepository;
+
+    private volatile Rankings rankings = new Rankings();
+    private volatile boolean ready = false;
+    // Изменения, пришедшие во время перестроения; null — перестроение не идёт
+    private List<Consumer<Rankings>> journal;
+
+    // Строится при старте (RoomService.rebuildIndexes из IndexInitializer); до готовности isReady() == false
+    public Mono<Void> rebuild() {
+        return Mono.defer(() -> {
+            List<Consumer<Rankings>> changes = new ArrayList<>();
+            synchronized (this) {
+                if (journal != null) {
+                    log.info("Ranking index rebuild already in progress");
+                    return Mono.empty();
+                }
+                journal = changes;
+            }
+            Rankings fresh = new Rankings();
+            return roomRepository.findByAvailableTrue()
+                    .doOnNext(room -> fresh.put(copyOf(room)))
+                    .count()
+                    .doOnNext(rooms -> {
+                        synchronized (this) {
+                            // Изменения, пришедшие во время чтения, повторяются поверх снимка
+                            changes.forEach(change -> change.accept(fresh));
+                            rankings = fresh;
+                            journal = null;
+                        }
+                        ready = true;
+                        log.info("Ranking index built | rooms={}, replayed={}", rooms, changes.size());
+                    })
+                    .doFinally(signal -> {
+                        synchronized (this) {
+                            if (journal == changes) {
+                                journal = null;
+                            }
+                        }
+                    })
+                    .then();
+        });
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // Номера в порядке рекомендаций: по отелю или по всем отелям, если hotelId == null.
+    // Пока номер переставляется, он может встретиться дважды — остаётся первое вхождение с актуальными данными
+    public Flux<Room> ranked(Long hotelId) {
+        return Flux.defer(() -> {
+            Rankings current = rankings;
+            NavigableSet<Room> rooms = hotelId == null ? current.global : current.byHotel.get(hotelId);
+            if (rooms == null) {
+                return Flux.empty();
+            }
+            return Flux.fromIterable(rooms)
+                    .distinct(Room::getId)
+                    .mapNotNull(room -> current.byId.get(room.getId()));
+        });
+    }
+
+    // Отель номера, если номер есть в рейтинге (то есть доступен), иначе null
+    public Long hotelOf(Long roomId) {
+        Room room = rankings.byId.get(roomId);
+        return room != null ? room.getHotelId() : null;
+    }
+
+    public void put(Room room) {
+        Room copy = copyOf(room);
+        apply(current -> current.put(copy));
+    }
+
+    public void remove(Long roomId) {
+        apply(current -> current.remove(roomId));
+    }
+
+    // Изменение применяется к текущему рейтингу и, пока идёт перестроение, запоминается для нового
+    private synchronized void apply(Consumer<Rankings> change) {
+        change.accept(rankings);
+        if (journal != null) {
+            journal.add(change);
+        }
+    }
+
+    private static int timesBooked(Room room) {
+        return room.getTimesBooked() != null ? room.getTimesBooked() : 0;
+    }
+
+    // Элементы множеств не должны меняться после вставки — храним собственные копии
+    private static Room copyOf(Room room) {
+        return Room.builder()
+                .id(room.getId())
+                .hotelId(room.getHotelId())
+                .number(room.getNumber())
+                .available(room.getAvailable())
+                .timesBooked(timesBooked(room))
+                .build();
+    }
+
+    private static final class Rankings {
+        private final NavigableSet<Room> global = new ConcurrentSkipListSet<>(RANK_ORDER);
+        private final Map<Long, NavigableSet<Room>> byHotel = new ConcurrentHashMap<>();
+        private final Map<Long, Room> byId = new ConcurrentHashMap<>();
+
+        // Новая позиция вставляется раньше, чем снимается старая: обходящий рейтинг не пропустит номер
+        void put(Room room) {
+            Room previous = byId.put(room.getId(), room);
+            global.add(room);
+            byHotel.computeIfAbsent(room.getHotelId(), id -> new ConcurrentSkipListSet<>(RANK_ORDER)).add(room);
+            if (previous == null) {
+                return;
+            }
+            // При той же позиции элемент не заменяется, актуальные данные берутся из byId
+            boolean moved = RANK_ORDER.compare(previous, room) != 0;
+            if (moved) {
+                global.remove(previous);
+            }
+            if (moved || !previous.getHotelId().equals(room.getHotelId())) {
+                NavigableSet<Room> hotelRooms = byHotel.get(previous.getHotelId());
+                if (hotelRooms != null) {
+                    hotelRooms.remove(previous);
+                }
+            }
+        }
+
+        void remove(Long roomId) {
+            Room previous = byId.remove(roomId);
+            if (previous != null) {
+                global.remove(previous);
+                NavigableSet<Room> hotelRooms = byHotel.get(previous.getHotelId());
+                if (hotelRooms != null) {
+                    hotelRooms.remove(previous);
+                }
+            }
+        }
+    }
+}
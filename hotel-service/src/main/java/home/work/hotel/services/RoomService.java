@@ -1,24 +1,43 @@
 package home.work.hotel.services;
 
+import home.work.hotel.dto.AvailabilityEvent;
+import home.work.hotel.dto.BulkAvailabilityRequest;
+import home.work.hotel.dto.DateRange;
+import home.work.hotel.dto.HoldResponse;
+import home.work.hotel.dto.RoomAvailabilityResponse;
+import home.work.hotel.dto.RoomConfirmResult;
+import home.work.hotel.dto.RoomConfirmation;
 import home.work.hotel.dto.RoomRequest;
 import home.work.hotel.dto.RoomResponse;
 import home.work.hotel.entities.Room;
+import home.work.hotel.exceptions.HoldLimitExceededException;
+import home.work.hotel.exceptions.HoldNotFoundException;
 import home.work.hotel.exceptions.RoomAlreadyBookedException;
 import home.work.hotel.exceptions.RoomAlreadyExists;
+import home.work.hotel.exceptions.RoomNotFoundException;
 import home.work.hotel.mappers.RoomMapper;
 import home.work.hotel.repositories.RoomRepository;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 
+import static home.work.exceptions.ExceptionProcessor.isLockTimeout;
 import static home.work.exceptions.ExceptionProcessor.isUniqueConstraintViolation;
 
 @Service
@@ -28,6 +47,18 @@ public class RoomService {
     private final DatabaseClient databaseClient;
     private final TransactionalOperator transactionalOperator;
     private final RoomMapper mapper;
+    private final RoomAvailabilityIndex availabilityIndex;
+    private final RoomRankingIndex rankingIndex;
+    private final RoomWriteQueue writeQueue;
+    private final OccupancyService occupancyService;
+    private final HotelService hotelService;
+    private final CatalogCache catalogCache;
+    private final HoldExpiryTimer holdExpiryTimer;
+    private final AvailabilityEventBus eventBus;
+
+    @Value("${hotel.holds.max-per-user:5}")
+    private int maxHoldsPerUser;
+
     private static final Logger log = LoggerFactory.getLogger(RoomService.class);
 
     public Mono<RoomResponse> addRoom(RoomRequest room) {
@@ -47,117 +78,689 @@ public class RoomService {
                     }
                     return Mono.error(throwable);
                 })
+                .doOnNext(saved -> {
+                    rankingIndex.put(saved);
+                    catalogCache.evictRooms(saved.getHotelId());
+                })
                 .map(mapper::toDto);
     }
 
     public Flux<RoomResponse> getAvailableRooms() {
-        return roomRepository.findByAvailableTrue()
-                .map(mapper::toDto);
+        return getRooms()
+                .filter(room -> Boolean.TRUE.equals(room.getAvailable()));
     }
 
+    // Каталог номеров собирается по отелям из кэша: изменение номера сбрасывает только его отель
     public Flux<RoomResponse> getRooms() {
-        return roomRepository.findAll()
+        return hotelService.getHotels()
+                .concatMap(hotel -> catalogCache.rooms(hotel.getId(),
+                        roomRepository.findByHotelId(hotel.getId()).map(mapper::toDto)));
+    }
+
+    public Flux<RoomResponse> getRooms(Long afterId, int limit) {
+        return roomRepository.findPage(afterId != null ? afterId : 0L, limit)
                 .map(mapper::toDto);
     }
 
-    public Flux<RoomResponse> getRecommendedRooms(Long hotelId, LocalDate startDate, LocalDate endDate) {
-//        return roomRepository.findByHotelIdAndAvailableTrueOrderByTimesBooked(hotelId)
-//        return roomRepository.findRecommendedRooms(hotelId)
-        return roomRepository.findAvailableAndRecommendedRooms(hotelId, startDate, endDate)
+    public Flux<RoomResponse> getRecommendedRooms(Long hotelId, LocalDate startDate, LocalDate endDate, Integer limit) {
+        int max = limit != null ? limit : Integer.MAX_VALUE;
+        boolean filterByDates = startDate != null && endDate != null;
+
+        if (rankingIndex.isReady() && (!filterByDates || availabilityIndex.isReady())) {
+            // Обходим рейтинг в памяти по порядку и останавливаемся на первых max свободных номерах
+            return rankingIndex.ranked(hotelId)
+                    .filter(room -> !filterByDates || availabilityIndex.isFree(room.getId(), startDate, endDate))
+                    .take(max)
+                    .map(mapper::toDto);
+        }
+
+        Flux<Room> rooms = filterByDates
+                ? roomRepository.findAvailableAndRecommendedRooms(hotelId, startDate, endDate)
+                : roomRepository.findRecommendedRooms(hotelId);
+        return rooms
+                .take(max)
                 .map(mapper::toDto);
     }
 
+    public Flux<RoomAvailabilityResponse> getAvailability(BulkAvailabilityRequest request) {
+        List<DateRange> ranges = request.getRanges();
+        Flux<Room> rooms = request.getHotelId() != null
+                ? roomRepository.findByHotelId(request.getHotelId())
+                : roomRepository.findAllById(request.getRoomIds());
+
+        if (availabilityIndex.isReady()) {
+            // Один проход по индексу: номер × диапазон, без запросов к room_blocked_ranges
+            return rooms.flatMapIterable(room -> ranges.stream()
+                    .map(range -> toAvailability(room, range,
+                            availabilityIndex.isFree(room.getId(), range.getStartDate(), range.getEndDate())))
+                    .toList());
+        }
+
+        // Индекс ещё не построен — один запрос за всеми интервалами этих номеров в общем диапазоне дат
+        LocalDate from = ranges.stream().map(DateRange::getStartDate).min(Comparator.naturalOrder()).orElseThrow();
+        LocalDate to = ranges.stream().map(DateRange::getEndDate).max(Comparator.naturalOrder()).orElseThrow();
+        return rooms.collectList()
+                .filter(roomList -> !roomList.isEmpty())
+                .flatMapMany(roomList -> findBlockedRanges(roomList.stream().map(Room::getId).toList(), from, to)
+                        .collectMultimap(BlockedRange::roomId)
+                        .flatMapIterable(blockedByRoom -> roomList.stream()
+                                .flatMap(room -> ranges.stream().map(range -> toAvailability(room, range,
+                                        isFree(blockedByRoom.get(room.getId()), range))))
+                                .toList()));
+    }
+
     public Mono<Boolean> confirmAvailability(Long roomId, LocalDate startDate, LocalDate endDate, String bookingId) {
         log.info("Confirming availability | roomId={}, startDate={}, endDate={}, bookingId={}",
                 roomId, startDate, endDate, bookingId);
 
-        if (startDate == null || endDate == null || startDate.isAfter(endDate)) {
+        // Диапазон полуоткрытый [startDate, endDate): день выезда не блокируется
+        if (startDate == null || endDate == null || !startDate.isBefore(endDate)) {
+            return Mono.just(false);
+        }
+
+        // Подтверждения одного номера выполняются по очереди: проверка по индексу видит все
+        // предыдущие блокировки, и конфликт отсекается до транзакции. Разные номера — параллельно.
+        // Повтор подтверждения той же брони (потерянный ответ, повтор саги) упирается в её собственный интервал;
+        // владелец проверяется только при таком конфликте, и повтор получает true, а не false:
+        // иначе вызывающий посчитал бы номер занятым чужой бронью
+        return writeQueue.submit(roomId, Mono.defer(() -> {
+            if (availabilityIndex.isReady() && !availabilityIndex.isFree(roomId, startDate, endDate)) {
+                return ownedOrConflict(roomId, startDate, endDate, bookingId);
+            }
+            return blockInTransaction(roomId, startDate, endDate, bookingId);
+        }));
+    }
+
+    private Mono<Boolean> ownedOrConflict(Long roomId, LocalDate startDate, LocalDate endDate, String bookingId) {
+        return isBlockedBy(roomId, startDate, endDate, bookingId)
+                .doOnNext(owned -> {
+                    if (owned) {
+                        log.info("Room already blocked by this booking | roomId={}, bookingId={}", roomId, bookingId);
+                    } else {
+                        log.warn("Room already booked | roomId={}, bookingId={}", roomId, bookingId);
+                    }
+                });
+    }
+
+    // Подтверждённый интервал ровно этих дат, принадлежащий брони bookingId
+    private Mono<Boolean> isBlockedBy(Long roomId, LocalDate startDate, LocalDate endDate, String bookingId) {
+        if (bookingId == null) {
             return Mono.just(false);
         }
+        return databaseClient.sql("""
+                        SELECT 1 FROM room_blocked_ranges
+                        WHERE booking_id = :bookingId
+                        AND room_id = :roomId
+                        AND start_date = :start
+                        AND end_date = :end
+                        AND hold_expires_at IS NULL
+                        LIMIT 1
+                        """)
+                .bind("bookingId", bookingId)
+                .bind("roomId", roomId)
+                .bind("start", startDate)
+                .bind("end", endDate)
+                .map((row, metadata) -> true)
+                .first()
+                .defaultIfEmpty(false);
+    }
 
-        return roomRepository.findById(roomId)
-                .switchIfEmpty(Mono.just(Room.builder().available(false).build()))
-                .filter(Room::getAvailable)
-                .flatMap(room -> {
-                    // Проверяем, не заняты ли даты
-                    return isRoomAvailableOnDates(roomId, startDate, endDate)
-                            .flatMap(available -> {
-                                if (!available) {
-                                    log.warn("Room already booked | roomId={}, bookingId={}", roomId, bookingId);
-                                    return Mono.just(false);
-                                }
-                                return blockDates(roomId, startDate, endDate, bookingId)
-                                        .doOnSuccess(v -> log.info("Room blocked successfully | roomId={}, bookingId={}", roomId, bookingId))
-                                        .then(roomRepository.findById(roomId))
-                                        .flatMap(existRoom -> {
-                                            existRoom.setTimesBooked(existRoom.getTimesBooked() + 1);
-                                            return roomRepository.save(existRoom);
-                                        })
-                                        .doOnSuccess(updated -> log.info("times_booked incremented | roomId={}, newCount={}", roomId, updated.getTimesBooked()))
-                                        .then(Mono.just(true));
-                            });
+    // Одна транзакция: UPDATE проверяет существование и доступность номера, увеличивает times_booked
+    // и блокирует строку номера; затем вставляется интервал. При конфликте откатывается и счётчик.
+    // Проверки в БД остаются: индекс может быть не готов, а писать может и другой экземпляр сервиса.
+    private Mono<Boolean> blockInTransaction(Long roomId, LocalDate startDate, LocalDate endDate, String bookingId) {
+        return incrementTimesBooked(roomId)
+                .flatMap(updated -> blockDates(roomId, startDate, endDate, bookingId).thenReturn(updated))
+                .as(transactionalOperator::transactional)
+                .doOnNext(updated -> {
+                    availabilityIndex.block(roomId, startDate, endDate);
+                    rankingIndex.put(updated);
+                    // times_booked входит в ответ каталога
+                    catalogCache.evictRooms(updated.getHotelId());
+                    publish(AvailabilityEvent.Type.BLOCKED, roomId, updated.getHotelId(), startDate, endDate);
+                    log.info("Room blocked successfully | roomId={}, bookingId={}, timesBooked={}",
+                            roomId, bookingId, updated.getTimesBooked());
                 })
+                .map(updated -> true)
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    log.warn("Room not found or not available | roomId={}, bookingId={}", roomId, bookingId);
+                    return false;
+                }))
                 .onErrorResume(RoomAlreadyBookedException.class, e -> {
                     log.warn("Concurrent booking conflict: {}", e.getMessage());
-                    return Mono.just(false);
+                    return ownedOrConflict(roomId, startDate, endDate, bookingId);
+                });
+    }
+
+    // Несколько номеров в одной транзакции: блокируются либо все интервалы, либо ни один.
+    // Строки номеров захватываются по возрастанию (roomId, startDate), поэтому две такие транзакции
+    // не могут взять одни и те же номера в разном порядке и ждать друг друга.
+    public Mono<List<RoomConfirmResult>> confirmAvailability(List<RoomConfirmation> rooms) {
+        List<RoomConfirmation> ordered = rooms.stream()
+                .sorted(Comparator.comparing(RoomConfirmation::getRoomId).thenComparing(RoomConfirmation::getStartDate))
+                .toList();
+        List<Long> roomIds = ordered.stream().map(RoomConfirmation::getRoomId).distinct().toList();
+        log.info("Confirming availability for rooms | roomIds={}, ranges={}", roomIds, ordered.size());
+
+        // Интервалы, уже принадлежащие своей брони (повтор запроса), ищутся только после конфликта:
+        // без них группа блокируется ещё раз, а если своими оказались все интервалы — подтверждается без записи
+        return writeQueue.submitAll(roomIds, blockAll(rooms, ordered)
+                .flatMap(results -> results.stream().noneMatch(result -> result.getStatus() == RoomConfirmResult.Status.CONFLICT)
+                        ? Mono.just(results)
+                        : Flux.fromIterable(ordered)
+                                .filterWhen(room -> isBlockedBy(room.getRoomId(), room.getStartDate(), room.getEndDate(), room.getBookingId())
+                                        .map(owned -> !owned))
+                                .collectList()
+                                .flatMap(pending -> pending.size() == ordered.size()
+                                        ? Mono.just(results)
+                                        : blockAll(rooms, pending))));
+    }
+
+    private Mono<List<RoomConfirmResult>> blockAll(List<RoomConfirmation> rooms, List<RoomConfirmation> pending) {
+        if (availabilityIndex.isReady()) {
+            for (RoomConfirmation room : pending) {
+                if (!availabilityIndex.isFree(room.getRoomId(), room.getStartDate(), room.getEndDate())) {
+                    log.warn("Room already booked | roomId={}, bookingId={}", room.getRoomId(), room.getBookingId());
+                    return Mono.just(rejected(rooms, room, "Room " + room.getRoomId() + " is not available for these dates"));
+                }
+            }
+        }
+        return Flux.fromIterable(pending)
+                .concatMap(room -> incrementTimesBooked(room.getRoomId())
+                        .switchIfEmpty(Mono.error(new RoomAlreadyBookedException("Room " + room.getRoomId() + " not found or not available")))
+                        .flatMap(updated -> blockDates(room.getRoomId(), room.getStartDate(), room.getEndDate(), room.getBookingId())
+                                .thenReturn(updated))
+                        .onErrorMap(RoomAlreadyBookedException.class, e -> new ConfirmationConflict(room, e.getMessage())))
+                .collectList()
+                .as(transactionalOperator::transactional)
+                .map(updatedRooms -> {
+                    for (int i = 0; i < pending.size(); i++) {
+                        RoomConfirmation room = pending.get(i);
+                        Room updated = updatedRooms.get(i);
+                        availabilityIndex.block(room.getRoomId(), room.getStartDate(), room.getEndDate());
+                        // Для номера с несколькими интервалами последним попадает самый свежий счётчик
+                        rankingIndex.put(updated);
+                        catalogCache.evictRooms(updated.getHotelId());
+                        publish(AvailabilityEvent.Type.BLOCKED, room.getRoomId(), updated.getHotelId(),
+                                room.getStartDate(), room.getEndDate());
+                    }
+                    log.info("Rooms blocked successfully | ranges={}", pending.size());
+                    return rooms.stream()
+                            .map(room -> toConfirmResult(room, RoomConfirmResult.Status.CONFIRMED, null))
+                            .toList();
                 })
-                .defaultIfEmpty(false);
+                .onErrorResume(ConfirmationConflict.class, e -> {
+                    log.warn("Multi-room confirmation rolled back: {}", e.getMessage());
+                    return Mono.just(rejected(rooms, e.room, e.getMessage()));
+                });
     }
 
     public Mono<Void> releaseRoom(Long roomId, LocalDate startDate, LocalDate endDate) {
+        // Удаляем интервалы, целиком попавшие в [startDate, endDate), и возвращаем их для обновления индекса
         String sql = """
-                DELETE FROM room_blocked_dates 
-                WHERE room_id = :roomId 
-                AND blocked_date BETWEEN :start AND :end
+                SELECT start_date, end_date, hold_expires_at FROM OLD TABLE (
+                    DELETE FROM room_blocked_ranges
+                    WHERE room_id = :roomId
+                    AND start_date >= :start
+                    AND end_date <= :end
+                )
                 """;
-        return databaseClient.sql(sql)
+        return deleteRanges(roomId, databaseClient.sql(sql)
                 .bind("roomId", roomId)
                 .bind("start", startDate)
-                .bind("end", endDate)
-                .fetch()
-                .rowsUpdated()
-                .doOnSuccess(rows -> log.info("Rows deleted: {}", rows))
+                .bind("end", endDate));
+    }
+
+    // Снимает только интервалы перечисленных броней номера: один DELETE по idx_blocked_booking
+    // в одной транзакции, чужие даты не затрагиваются
+    public Mono<Void> releaseByBooking(Long roomId, Collection<String> bookingIds, Collection<String> requestIds) {
+        log.info("Release by booking | roomId={}, bookingIds={}, requestIds={}", roomId, bookingIds, requestIds);
+        String sql = """
+                SELECT start_date, end_date, hold_expires_at FROM OLD TABLE (
+                    DELETE FROM room_blocked_ranges
+                    WHERE booking_id IN (:bookingIds)
+                    AND room_id = :roomId
+                )
+                """;
+        return deleteRanges(roomId, databaseClient.sql(sql)
+                .bind("bookingIds", bookingIds)
+                .bind("roomId", roomId));
+    }
+
+    // Через ту же очередь, что и подтверждения: индекс номера меняется в порядке поступления.
+    // Удаление интервалов и уменьшение счётчиков занятости — в одной транзакции.
+    private Mono<Void> deleteRanges(Long roomId, DatabaseClient.GenericExecuteSpec deleteReturningRanges) {
+        return writeQueue.submit(roomId, deleteReturningRanges
+                .map((row, metadata) -> new BlockedRange(
+                        roomId,
+                        row.get("start_date", LocalDate.class),
+                        row.get("end_date", LocalDate.class),
+                        row.get("hold_expires_at", LocalDateTime.class) != null))
+                .all()
+                .collectList()
+                .flatMap(ranges -> Flux.fromIterable(ranges)
+                        // Удержания в агрегат занятости не входят
+                        .filter(range -> !range.hold())
+                        .concatMap(range -> occupancyService.adjust(roomId, range.startDate(), range.endDate(), -1))
+                        .then(Mono.just(ranges)))
+                .as(transactionalOperator::transactional)
+                .doOnNext(ranges -> {
+                    ranges.forEach(range -> {
+                        availabilityIndex.release(roomId, range.startDate(), range.endDate());
+                        publish(AvailabilityEvent.Type.RELEASED, roomId, range.startDate(), range.endDate());
+                    });
+                    log.info("Ranges deleted: {}", ranges.size());
+                })
+                .then());
+    }
+
+    // Временное удержание: интервал блокируется так же, как бронь, но с моментом истечения.
+    // Истечение обрабатывает колесо таймеров, а не периодический просмотр таблицы.
+    // Удержание принадлежит пользователю owner: снять или подтвердить его можно только от его имени.
+    public Mono<HoldResponse> holdRoom(Long roomId, LocalDate startDate, LocalDate endDate, Duration ttl, String owner) {
+        return writeQueue.submit(roomId, Mono.defer(() -> {
+            if (availabilityIndex.isReady() && !availabilityIndex.isFree(roomId, startDate, endDate)) {
+                return Mono.error(new RoomAlreadyBookedException("Room " + roomId + " is not available for these dates"));
+            }
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime expiresAt = now.plus(ttl);
+            return lockAvailableRoom(roomId)
+                    .switchIfEmpty(Mono.error(new RoomAlreadyBookedException("Room " + roomId + " not found or not available")))
+                    .then(checkHoldLimit(owner, now))
+                    .then(insertRange(roomId, startDate, endDate, expiresAt, null, owner))
+                    .as(transactionalOperator::transactional)
+                    .map(holdId -> {
+                        availabilityIndex.block(roomId, startDate, endDate);
+                        holdExpiryTimer.schedule(holdId, ttl, () -> expireHold(roomId, holdId));
+                        publish(AvailabilityEvent.Type.HELD, roomId, startDate, endDate);
+                        log.info("Room held | roomId={}, holdId={}, owner={}, expiresAt={}", roomId, holdId, owner, expiresAt);
+                        return HoldResponse.builder()
+                                .holdId(holdId)
+                                .roomId(roomId)
+                                .startDate(startDate)
+                                .endDate(endDate)
+                                .expiresAt(expiresAt)
+                                .build();
+                    });
+        }));
+    }
+
+    // Удержания пользователя, ещё не истёкшие, считаются под блокировкой строки номера (lockAvailableRoom).
+    // Одновременные удержания разных номеров одним пользователем могут превысить предел на единицы:
+    // предел защищает от массового захвата дат, а не ведёт точный учёт.
+    private Mono<Void> checkHoldLimit(String owner, LocalDateTime now) {
+        return databaseClient.sql("""
+                        SELECT COUNT(*) AS count FROM room_blocked_ranges
+                        WHERE hold_owner = :owner
+                        AND hold_expires_at > :now
+                        """)
+                .bind("owner", owner)
+                .bind("now", now)
+                .map((row, metadata) -> row.get("count", Long.class))
+                .one()
+                .flatMap(active -> active >= maxHoldsPerUser
+                        ? Mono.error(new HoldLimitExceededException("User " + owner + " already has " + active
+                                + " active holds, limit is " + maxHoldsPerUser))
+                        : Mono.empty());
+    }
+
+    // Удержание уже гарантирует свободные даты — повторная проверка занятости не нужна:
+    // интервал становится постоянным, увеличиваются times_booked и агрегат занятости.
+    // Подтвердить можно только удержание пользователя owner — того, для кого оформляется бронь.
+    public Mono<Boolean> confirmHold(Long roomId, Long holdId, String bookingId, String owner) {
+        String sql = """
+                SELECT start_date, end_date FROM FINAL TABLE (
+                    UPDATE room_blocked_ranges SET hold_expires_at = NULL, booking_id = :bookingId
+                    WHERE id = :holdId
+                    AND room_id = :roomId
+                    AND hold_owner = :owner
+                    AND hold_expires_at > :now
+                )
+                """;
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql)
+                .bind("holdId", holdId)
+                .bind("roomId", roomId)
+                .bind("owner", owner)
+                .bind("now", LocalDateTime.now());
+        spec = bookingId != null
+                ? spec.bind("bookingId", bookingId)
+                : spec.bindNull("bookingId", String.class);
+        return writeQueue.submit(roomId, spec
+                .map((row, metadata) -> new DateRange(
+                        row.get("start_date", LocalDate.class),
+                        row.get("end_date", LocalDate.class)))
+                .one()
+                .flatMap(range -> incrementTimesBooked(roomId)
+                        .switchIfEmpty(Mono.error(new RoomAlreadyBookedException("Room " + roomId + " is not available")))
+                        .flatMap(updated -> occupancyService.adjust(roomId, range.getStartDate(), range.getEndDate(), 1)
+                                .thenReturn(new ConfirmedHold(updated, range))))
+                .as(transactionalOperator::transactional)
+                .map(confirmed -> {
+                    Room updated = confirmed.room();
+                    holdExpiryTimer.cancel(holdId);
+                    rankingIndex.put(updated);
+                    catalogCache.evictRooms(updated.getHotelId());
+                    publish(AvailabilityEvent.Type.BLOCKED, roomId, updated.getHotelId(),
+                            confirmed.range().getStartDate(), confirmed.range().getEndDate());
+                    log.info("Hold confirmed | roomId={}, holdId={}, bookingId={}", roomId, holdId, bookingId);
+                    return true;
+                })
+                // Повтор после потерянного ответа: удержание уже стало бронью bookingId
+                .switchIfEmpty(Mono.defer(() -> isHoldConfirmedBy(roomId, holdId, bookingId)
+                        .flatMap(owned -> owned
+                                ? Mono.just(true)
+                                : Mono.error(new HoldNotFoundException("Hold " + holdId + " not found or expired"))))));
+    }
+
+    private Mono<Boolean> isHoldConfirmedBy(Long roomId, Long holdId, String bookingId) {
+        if (bookingId == null) {
+            return Mono.just(false);
+        }
+        return databaseClient.sql("""
+                        SELECT 1 FROM room_blocked_ranges
+                        WHERE id = :holdId
+                        AND room_id = :roomId
+                        AND booking_id = :bookingId
+                        AND hold_expires_at IS NULL
+                        """)
+                .bind("holdId", holdId)
+                .bind("roomId", roomId)
+                .bind("bookingId", bookingId)
+                .map((row, metadata) -> true)
+                .first()
+                .defaultIfEmpty(false);
+    }
+
+    // Чужое удержание для пользователя не существует: тот же 404, что и для неизвестного id
+    public Mono<Void> cancelHold(Long roomId, Long holdId, String owner) {
+        return deleteHold(roomId, holdId, owner)
+                .switchIfEmpty(Mono.error(new HoldNotFoundException("Hold " + holdId + " not found")))
+                .doOnNext(range -> holdExpiryTimer.cancel(holdId))
                 .then();
     }
 
-    private Mono<Boolean> isRoomAvailableOnDates(Long roomId, LocalDate start, LocalDate end) {
+    // После перезапуска возвращаем в колесо все неподтверждённые удержания (уже истёкшие — с нулевой задержкой)
+    @EventListener(ApplicationReadyEvent.class)
+    public void restoreHolds() {
+        databaseClient.sql("SELECT id, room_id, hold_expires_at FROM room_blocked_ranges WHERE hold_expires_at IS NOT NULL")
+                .map((row, metadata) -> {
+                    Long holdId = row.get("id", Long.class);
+                    Long roomId = row.get("room_id", Long.class);
+                    Duration delay = Duration.between(LocalDateTime.now(), row.get("hold_expires_at", LocalDateTime.class));
+                    holdExpiryTimer.schedule(holdId, delay, () -> expireHold(roomId, holdId));
+                    return holdId;
+                })
+                .all()
+                .count()
+                .subscribe(
+                        holds -> log.info("Holds restored: {}", holds),
+                        error -> log.warn("Holds restore failed: {}", String.valueOf(error))
+                );
+    }
+
+    private void expireHold(Long roomId, Long holdId) {
+        deleteHold(roomId, holdId, null).subscribe(
+                range -> log.info("Hold expired | roomId={}, holdId={}", roomId, holdId),
+                error -> log.warn("Hold expiry failed | holdId={}: {}", holdId, String.valueOf(error))
+        );
+    }
+
+    // Удаляет только неподтверждённое удержание; подтверждённая к этому моменту бронь не затрагивается.
+    // owner == null — истечение по таймеру, владелец не проверяется.
+    private Mono<DateRange> deleteHold(Long roomId, Long holdId, String owner) {
+        String sql = """
+                SELECT start_date, end_date FROM OLD TABLE (
+                    DELETE FROM room_blocked_ranges
+                    WHERE id = :holdId
+                    AND room_id = :roomId
+                    AND hold_expires_at IS NOT NULL
+                """ + (owner != null ? "AND hold_owner = :owner\n" : "") + ")";
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql)
+                .bind("holdId", holdId)
+                .bind("roomId", roomId);
+        if (owner != null) {
+            spec = spec.bind("owner", owner);
+        }
+        return writeQueue.submit(roomId, spec
+                .map((row, metadata) -> new DateRange(
+                        row.get("start_date", LocalDate.class),
+                        row.get("end_date", LocalDate.class)))
+                .one()
+                .doOnNext(range -> {
+                    availabilityIndex.release(roomId, range.getStartDate(), range.getEndDate());
+                    publish(AvailabilityEvent.Type.RELEASED, roomId, range.getStartDate(), range.getEndDate());
+                }));
+    }
+
+    // Блокировка строки номера на время транзакции удержания — как UPDATE в incrementTimesBooked
+    private Mono<Long> lockAvailableRoom(Long roomId) {
+        return databaseClient.sql("SELECT id FROM rooms WHERE id = :roomId AND available = true FOR UPDATE")
+                .bind("roomId", roomId)
+                .map((row, metadata) -> row.get("id", Long.class))
+                .one()
+                .onErrorMap(throwable -> isLockTimeout(throwable),
+                        throwable -> new RoomAlreadyBookedException("Room " + roomId + " is being booked concurrently"));
+    }
+
+    public Mono<RoomResponse> setAvailable(Long roomId, boolean available) {
+        String sql = """
+                SELECT id, hotel_id, number, available, times_booked FROM FINAL TABLE (
+                    UPDATE rooms SET available = :available WHERE id = :roomId
+                )
+                """;
+        return writeQueue.submit(roomId, databaseClient.sql(sql)
+                .bind("available", available)
+                .bind("roomId", roomId)
+                .map((row, metadata) -> Room.builder()
+                        .id(row.get("id", Long.class))
+                        .hotelId(row.get("hotel_id", Long.class))
+                        .number(row.get("number", Integer.class))
+                        .available(row.get("available", Boolean.class))
+                        .timesBooked(row.get("times_booked", Integer.class))
+                        .build())
+                .one()
+                .switchIfEmpty(Mono.error(new RoomNotFoundException(roomId)))
+                .doOnNext(room -> {
+                    if (available) {
+                        rankingIndex.put(room);
+                    } else {
+                        rankingIndex.remove(roomId);
+                    }
+                    catalogCache.evictRooms(room.getHotelId());
+                    publish(available ? AvailabilityEvent.Type.AVAILABLE : AvailabilityEvent.Type.UNAVAILABLE,
+                            roomId, room.getHotelId(), null, null);
+                    log.info("Room availability changed | roomId={}, available={}", roomId, available);
+                })
+                .map(mapper::toDto));
+    }
+
+    public Flux<AvailabilityEvent> availabilityEvents(Long hotelId) {
+        return eventBus.subscribe(hotelId);
+    }
+
+    public Mono<Void> rebuildIndexes() {
+        return Mono.when(availabilityIndex.rebuild(), rankingIndex.rebuild())
+                .doOnSuccess(v -> catalogCache.evictAll());
+    }
+
+    private void publish(AvailabilityEvent.Type type, Long roomId, Long hotelId, LocalDate start, LocalDate end) {
+        eventBus.publish(AvailabilityEvent.builder()
+                .type(type)
+                .roomId(roomId)
+                .hotelId(hotelId)
+                .startDate(start)
+                .endDate(end)
+                .at(Instant.now())
+                .build());
+    }
+
+    // Отель берётся из рейтинга в памяти; для недоступного номера — из БД
+    private void publish(AvailabilityEvent.Type type, Long roomId, LocalDate start, LocalDate end) {
+        Long hotelId = rankingIndex.hotelOf(roomId);
+        if (hotelId != null) {
+            publish(type, roomId, hotelId, start, end);
+            return;
+        }
+        roomRepository.findById(roomId).subscribe(
+                room -> publish(type, roomId, room.getHotelId(), start, end),
+                error -> log.warn("Availability event skipped | roomId={}: {}", roomId, String.valueOf(error))
+        );
+    }
+
+    private Flux<BlockedRange> findBlockedRanges(List<Long> roomIds, LocalDate from, LocalDate to) {
+        String sql = """
+                SELECT room_id, start_date, end_date FROM room_blocked_ranges
+                WHERE room_id IN (:roomIds)
+                AND start_date < :to
+                AND end_date > :from
+                """;
+        return databaseClient.sql(sql)
+                .bind("roomIds", roomIds)
+                .bind("from", from)
+                .bind("to", to)
+                .map((row, metadata) -> new BlockedRange(
+                        row.get("room_id", Long.class),
+                        row.get("start_date", LocalDate.class),
+                        row.get("end_date", LocalDate.class),
+                        false))
+                .all();
+    }
+
+    private static boolean isFree(Collection<BlockedRange> blocked, DateRange range) {
+        return blocked == null || blocked.stream().noneMatch(b ->
+                b.startDate().isBefore(range.getEndDate()) && b.endDate().isAfter(range.getStartDate()));
+    }
+
+    private static RoomAvailabilityResponse toAvailability(Room room, DateRange range, boolean free) {
+        return RoomAvailabilityResponse.builder()
+                .roomId(room.getId())
+                .hotelId(room.getHotelId())
+                .number(room.getNumber())
+                .startDate(range.getStartDate())
+                .endDate(range.getEndDate())
+                .available(Boolean.TRUE.equals(room.getAvailable()) && free)
+                .build();
+    }
+
+    // Возвращает номер с уже увеличенным счётчиком или пусто, если номер не найден или недоступен
+    private Mono<Room> incrementTimesBooked(Long roomId) {
+        String sql = """
+                SELECT id, hotel_id, number, available, times_booked FROM FINAL TABLE (
+                    UPDATE rooms SET times_booked = COALESCE(times_booked, 0) + 1
+                    WHERE id = :roomId AND available = true
+                )
+                """;
+        return databaseClient.sql(sql)
+                .bind("roomId", roomId)
+                .map((row, metadata) -> Room.builder()
+                        .id(row.get("id", Long.class))
+                        .hotelId(row.get("hotel_id", Long.class))
+                        .number(row.get("number", Integer.class))
+                        .available(row.get("available", Boolean.class))
+                        .timesBooked(row.get("times_booked", Integer.class))
+                        .build())
+                .one()
+                .onErrorMap(throwable -> isLockTimeout(throwable),
+                        throwable -> new RoomAlreadyBookedException("Room " + roomId + " is being booked concurrently"));
+    }
+
+    // Первая занятая ночь в [start, end) — запрашивается только при конфликте
+    private Mono<LocalDate> firstBlockedDate(Long roomId, LocalDate start, LocalDate end) {
         String sql = """
-                SELECT COUNT(*) as count FROM room_blocked_dates 
-                WHERE room_id = :roomId 
-                AND blocked_date BETWEEN :start AND :end
+                SELECT start_date FROM room_blocked_ranges
+                WHERE room_id = :roomId
+                AND start_date < :end
+                AND end_date > :start
+                ORDER BY start_date
+                LIMIT 1
                 """;
         return databaseClient.sql(sql)
                 .bind("roomId", roomId)
                 .bind("start", start)
                 .bind("end", end)
-                .fetch()
+                .map((row, metadata) -> row.get("start_date", LocalDate.class))
                 .one()
-                .map(row -> {
-                    log.info("Rows blocked {}", row);
-                    return ((Number) row.get("count")).longValue() == 0;
-                });
+                .map(blockedFrom -> blockedFrom.isAfter(start) ? blockedFrom : start)
+                .defaultIfEmpty(start);
     }
 
+    // Вызывается внутри транзакции, уже удерживающей блокировку строки номера (см. incrementTimesBooked),
+    // поэтому проверка пересечения и вставка интервала не могут разойтись
     private Mono<Void> blockDates(Long roomId, LocalDate start, LocalDate end, String bookingId) {
-        List<LocalDate> dates = start.datesUntil(end.plusDays(1)).toList();
-        Flux<?> inserts = Flux.fromIterable(dates)
-                .flatMap(date -> {
-                    log.info("Blocking date: {} for room: {}, booking: {}", date, roomId, bookingId);
-                    return databaseClient.sql(
-                                    "INSERT INTO room_blocked_dates (room_id, blocked_date) VALUES (:roomId, :date)")
-                            .bind("roomId", roomId)
-                            .bind("date", date)
-                            .fetch()
-                            .rowsUpdated()
-                            .onErrorResume(throwable -> {
-                                // Проверяем, не ошибка ли уникальности
-                                if (isUniqueConstraintViolation(throwable)) {
-                                    log.warn("Date {} already blocked for room {}, booking {}", date, roomId, bookingId);
-                                    return Mono.error(new RoomAlreadyBookedException("Date " + date + " already booked"));
-                                }
-                                return Mono.error(throwable);
-                            });
-                });
-        return inserts.as(transactionalOperator::transactional).then();
+        log.info("Blocking dates: {} - {} for room: {}, booking: {}", start, end, roomId, bookingId);
+        return insertRange(roomId, start, end, null, bookingId, null)
+                .then(occupancyService.adjust(roomId, start, end, 1));
+    }
+
+    // Условная вставка интервала; holdExpiresAt == null — постоянная блокировка, иначе удержание пользователя holdOwner.
+    // Возвращает id интервала или ошибку RoomAlreadyBookedException с первой занятой датой.
+    private Mono<Long> insertRange(Long roomId, LocalDate start, LocalDate end, LocalDateTime holdExpiresAt,
+                                   String bookingId, String holdOwner) {
+        String insertSql = """
+                SELECT id FROM FINAL TABLE (
+                    INSERT INTO room_blocked_ranges (room_id, start_date, end_date, hold_expires_at, booking_id, hold_owner)
+                    SELECT r.id, :start, :end, :holdExpiresAt, :bookingId, :holdOwner FROM rooms r
+                    WHERE r.id = :roomId
+                    AND NOT EXISTS (
+                        SELECT 1 FROM room_blocked_ranges b
+                        WHERE b.room_id = r.id
+                        AND b.start_date < :end
+                        AND b.end_date > :start
+                    )
+                )
+                """;
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(insertSql)
+                .bind("roomId", roomId)
+                .bind("start", start)
+                .bind("end", end);
+        spec = holdExpiresAt != null
+                ? spec.bind("holdExpiresAt", holdExpiresAt)
+                : spec.bindNull("holdExpiresAt", LocalDateTime.class);
+        spec = bookingId != null
+                ? spec.bind("bookingId", bookingId)
+                : spec.bindNull("bookingId", String.class);
+        spec = holdOwner != null
+                ? spec.bind("holdOwner", holdOwner)
+                : spec.bindNull("holdOwner", String.class);
+
+        return spec.map((row, metadata) -> row.get("id", Long.class))
+                .one()
+                .switchIfEmpty(Mono.defer(() -> firstBlockedDate(roomId, start, end)
+                        .flatMap(date -> {
+                            log.warn("Date {} already blocked for room {}, booking {}", date, roomId, bookingId);
+                            return Mono.<Long>error(new RoomAlreadyBookedException("Date " + date + " already booked"));
+                        })))
+                .onErrorMap(throwable -> isUniqueConstraintViolation(throwable) || isLockTimeout(throwable),
+                        throwable -> new RoomAlreadyBookedException("Room " + roomId + " is being booked concurrently"));
+    }
+
+    // Конфликт по одному номеру откатывает всю транзакцию; остальные номера получают ROLLED_BACK
+    private static List<RoomConfirmResult> rejected(List<RoomConfirmation> rooms, RoomConfirmation conflict, String message) {
+        return rooms.stream()
+                .map(room -> room == conflict
+                        ? toConfirmResult(room, RoomConfirmResult.Status.CONFLICT, message)
+                        : toConfirmResult(room, RoomConfirmResult.Status.ROLLED_BACK, null))
+                .toList();
+    }
+
+    private static RoomConfirmResult toConfirmResult(RoomConfirmation room, RoomConfirmResult.Status status, String message) {
+        return new RoomConfirmResult(room.getRoomId(), room.getStartDate(), room.getEndDate(),
+                room.getBookingId(), status, message);
+    }
+
+    // Несёт номер, на котором случился конфликт, через откат транзакции
+    private static final class ConfirmationConflict extends RuntimeException {
+        private final RoomConfirmation room;
+
+        ConfirmationConflict(RoomConfirmation room, String message) {
+            super(message);
+            this.room = room;
+        }
+    }
+
+    private record ConfirmedHold(Room room, DateRange range) {
+    }
+
+    private record BlockedRange(Long roomId, LocalDate startDate, LocalDate endDate, boolean hold) {
     }
 }
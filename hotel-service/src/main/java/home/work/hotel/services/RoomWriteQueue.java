@@ -0,0 +1,115 @@
+package home.work.hotel.services;
+
+import home.work.hotel.exceptions.RoomQueueFullException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Последовательное выполнение изменений по одному номеру без блокировки потоков.
+ * Номера распределяются по полосам (stripe = roomId mod N); внутри полосы задачи
+ * выполняются строго по очереди, разные полосы работают параллельно.
+ * Следующая задача подписывается только после завершения предыдущей, поэтому
+ * проверка занятости по индексу видит результат всех ранее поставленных подтверждений.
+ * Поставленная задача выполняется до конца, даже если вызывающий отменил подписку
+ * (таймаут клиента, разрыв соединения): иначе полоса освободилась бы раньше, чем транзакция зафиксирована.
+ */
+@Component
+public class RoomWriteQueue {
+    private final Stripe[] stripes;
+    private final int maxPending;
+
+    public RoomWriteQueue(@Value("${hotel.write-queue.stripes:64}") int stripes,
+                          @Value("${hotel.write-queue.max-pending:256}") int maxPending) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("hotel.write-queue.stripes must be positive");
+        }
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("hotel.write-queue.max-pending must be positive");
+        }
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.maxPending = maxPending;
+    }
+
+    public <T> Mono<T> submit(Long roomId, Mono<T> task) {
+        return Mono.defer(() -> {
+            Stripe stripe = stripes[stripeOf(roomId)];
+            Sinks.Empty<Void> done = Sinks.empty();
+            Mono<Void> previous;
+            synchronized (stripe) {
+                if (stripe.pending >= maxPending) {
+                    return Mono.error(new RoomQueueFullException("Too many pending changes for room " + roomId));
+                }
+                stripe.pending++;
+                previous = stripe.tail;
+                stripe.tail = done.asMono();
+            }
+            return start(previous, task, done, stripe);
+        });
+    }
+
+    // Задача по нескольким номерам встаёт в очередь каждой их полосы и стартует, когда все они свободны.
+    // Постановка во все полосы атомарна относительно других таких задач и идёт по возрастанию номера полосы:
+    // иначе две задачи могли бы встать в две полосы в разном порядке и ждать друг друга.
+    public <T> Mono<T> submitAll(Collection<Long> roomIds, Mono<T> task) {
+        return Mono.defer(() -> {
+            Stripe[] used = roomIds.stream().mapToInt(this::stripeOf).distinct().sorted()
+                    .mapToObj(index -> stripes[index])
+                    .toArray(Stripe[]::new);
+            Sinks.Empty<Void> done = Sinks.empty();
+            List<Mono<Void>> previous = new ArrayList<>(used.length);
+            synchronized (this) {
+                for (Stripe stripe : used) {
+                    synchronized (stripe) {
+                        if (stripe.pending >= maxPending) {
+                            return Mono.error(new RoomQueueFullException("Too many pending changes for rooms " + roomIds));
+                        }
+                    }
+                }
+                for (Stripe stripe : used) {
+                    synchronized (stripe) {
+                        stripe.pending++;
+                        previous.add(stripe.tail);
+                        stripe.tail = done.asMono();
+                    }
+                }
+            }
+            return start(Mono.when(previous), task, done, used);
+        });
+    }
+
+    // Задача запускается отдельной подпиской; вызывающий получает её результат через cache(),
+    // и его отмена не прерывает задачу. Полоса освобождается только по завершению самой задачи.
+    private <T> Mono<T> start(Mono<Void> previous, Mono<T> task, Sinks.Empty<Void> done, Stripe... used) {
+        Mono<T> run = previous.then(task)
+                .doFinally(signal -> {
+                    for (Stripe stripe : used) {
+                        synchronized (stripe) {
+                            stripe.pending--;
+                        }
+                    }
+                    done.tryEmitEmpty();
+                })
+                .cache();
+        // Ошибку получает вызывающий; эта подписка только держит задачу до завершения
+        run.subscribe(null, error -> { });
+        return run;
+    }
+
+    private int stripeOf(Long roomId) {
+        return Math.floorMod(roomId.hashCode(), stripes.length);
+    }
+
+    private static final class Stripe {
+        private Mono<Void> tail = Mono.empty();
+        private int pending;
+    }
+}
@@ -17,12 +17,39 @@ CREATE TABLE IF NOT EXISTS rooms (
 CREATE INDEX IF NOT EXISTS idx_rooms_hotel_id ON rooms(hotel_id);
 CREATE INDEX IF NOT EXISTS idx_rooms_times_booked ON rooms(times_booked, id);
 
-CREATE TABLE IF NOT EXISTS room_blocked_dates (
+CREATE TABLE IF NOT EXISTS room_blocked_ranges (
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
     room_id BIGINT NOT NULL,
-    blocked_date DATE NOT NULL,
+    start_date DATE NOT NULL,
+    end_date DATE NOT NULL,  -- не включается: [start_date, end_date)
+    hold_expires_at TIMESTAMP,  -- NULL — подтверждённая бронь, иначе временное удержание до этого момента
+    booking_id VARCHAR(255),    -- бронь-владелец интервала (из AvailabilityRequest.bookingId)
+    hold_owner VARCHAR(255),    -- пользователь, создавший удержание (subject токена)
     FOREIGN KEY (room_id) REFERENCES rooms(id) ON DELETE CASCADE,
-    UNIQUE (room_id, blocked_date)  -- защита от повторного бронирования
+    CHECK (start_date < end_date)
 );
 
-CREATE INDEX IF NOT EXISTS idx_blocked_room_date ON room_blocked_dates(room_id, blocked_date);
\ No newline at end of file
+CREATE INDEX IF NOT EXISTS idx_blocked_room_range ON room_blocked_ranges(room_id, start_date, end_date);
+CREATE INDEX IF NOT EXISTS idx_blocked_booking ON room_blocked_ranges(booking_id);
+CREATE INDEX IF NOT EXISTS idx_blocked_hold_owner ON room_blocked_ranges(hold_owner, hold_expires_at);
+-- Агрегат занятости: число занятых номеров отеля на каждую ночь.
+-- Обновляется в той же транзакции, что и блокировка/освобождение дат.
+CREATE TABLE IF NOT EXISTS hotel_daily_occupancy (
+    hotel_id BIGINT NOT NULL,
+    stay_date DATE NOT NULL,
+    booked_rooms INT NOT NULL DEFAULT 0,
+    PRIMARY KEY (hotel_id, stay_date),
+    FOREIGN KEY (hotel_id) REFERENCES hotels(id) ON DELETE CASCADE
+);
+
+-- Прошедшие интервалы переносятся сюда фоновым уплотнением (BlockedRangeCompactor)
+CREATE TABLE IF NOT EXISTS room_blocked_ranges_archive (
+    id BIGINT PRIMARY KEY,
+    room_id BIGINT NOT NULL,
+    start_date DATE NOT NULL,
+    end_date DATE NOT NULL,
+    booking_id VARCHAR(255),
+    archived_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_blocked_end_date ON room_blocked_ranges(end_date);
@@ -8,6 +8,7 @@ import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWeb
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.http.MediaType;
+import org.springframework.r2dbc.core.DatabaseClient;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
@@ -23,6 +24,9 @@ public class HotelConcurrencyTests {
     @Autowired
     private WebTestClient webTestClient;
 
+    @Autowired
+    private DatabaseClient databaseClient;
+
     private String token;
 
     @BeforeEach
@@ -39,8 +43,8 @@ public class HotelConcurrencyTests {
 
     @Test
     void concurrentConfirmAvailabilityShouldNotCreateDuplicateBlocks() throws InterruptedException {
-        // Используем заранее существующую комнату (инициализатор создает номера; выбран id=1L)
-        Long roomId = 1L;
+        // Используем заранее существующую комнату (инициализатор создает номера; выбран 101 первого отеля)
+        Long roomId = TestSeedData.roomId(databaseClient, TestSeedData.HOTEL_1, 101);
         LocalDate start = LocalDate.now().plusDays(10);
         LocalDate end = LocalDate.now().plusDays(12);
 
@@ -1,18 +1,30 @@
 package home.work.hotel;
 
+import home.work.hotel.services.RoomAvailabilityIndex;
+import home.work.hotel.services.RoomRankingIndex;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @AutoConfigureWebTestClient
@@ -21,6 +33,27 @@ public class HotelServiceApplicationTests {
     @Autowired
     private WebTestClient webTestClient;
 
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @Autowired
+    private RoomAvailabilityIndex availabilityIndex;
+
+    @Autowired
+    private RoomRankingIndex rankingIndex;
+
+    // Индексы строит IndexInitializer после наполнения данными, а не сам наполнитель
+    @Test
+    void shouldBuildIndexesAtStartup() {
+        Long roomId = room(TestSeedData.HOTEL_1, 101);
+        Mono.fromSupplier(() -> availabilityIndex.isReady() && rankingIndex.isReady())
+                .filter(ready -> ready)
+                .repeatWhenEmpty(repeat -> repeat.delayElements(Duration.ofMillis(100)))
+                .block(Duration.ofSeconds(10));
+
+        Assertions.assertEquals(TestSeedData.hotelId(databaseClient, TestSeedData.HOTEL_1), rankingIndex.hotelOf(roomId));
+    }
+
     @Test
     void shouldGetHotelsAsUser() {
         // Получаем токен USER
@@ -37,6 +70,34 @@ public class HotelServiceApplicationTests {
                 .jsonPath("$[0].name").isEqualTo("Hotel 1");
     }
 
+    @Test
+    void shouldPageHotelsWithCursor() {
+        String token = generateJwtToken("user@example.com", List.of("USER"));
+
+        String cursor = webTestClient
+                .get()
+                .uri("/api/hotels?size=1")
+                .header("Authorization", "Bearer " + token)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().exists("X-Next-Cursor")
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].name").isEqualTo("Hotel 1")
+                .returnResult()
+                .getResponseHeaders()
+                .getFirst("X-Next-Cursor");
+
+        webTestClient
+                .get()
+                .uri("/api/hotels?size=1&cursor={cursor}", cursor)
+                .header("Authorization", "Bearer " + token)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].name").isEqualTo("Hotel 2");
+    }
+
     @Test
     void shouldGetRecommendedRooms() {
         String token = generateJwtToken("user@example.com", List.of("USER"));
@@ -51,6 +112,575 @@ public class HotelServiceApplicationTests {
                 .jsonPath("$").isArray();
     }
 
+    @Test
+    void shouldLimitRecommendedRooms() {
+        String token = generateJwtToken("user@example.com", List.of("USER"));
+
+        webTestClient
+                .get()
+                .uri("/api/rooms/recommend?startDate=2026-01-10&endDate=2026-01-12&limit=2")
+                .header("Authorization", "Bearer " + token)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2);
+    }
+
+    @Test
+    void shouldExcludeBlockedRoomFromRecommendations() {
+        String token = generateJwtToken("system", List.of("INTERNAL", "USER"));
+        Long roomId = room(TestSeedData.HOTEL_1, 101);
+        LocalDate start = LocalDate.now().plusDays(40);
+        LocalDate end = LocalDate.now().plusDays(42);
+
+        String body = String.format("""
+                {
+                  "startDate": "%s",
+                  "endDate": "%s",
+                  "bookingId": "recommend-1"
+                }
+                """, start, end);
+
+        webTestClient
+                .post()
+                .uri("/api/rooms/{id}/confirm-availability", roomId)
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Boolean.class).isEqualTo(true);
+
+        // Пересекающийся диапазон — заблокированный номер не должен попасть в рекомендации
+        webTestClient
+                .get()
+                .uri("/api/rooms/recommend?startDate={start}&endDate={end}", start.plusDays(1), end.plusDays(2))
+                .header("Authorization", "Bearer " + token)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[?(@.id == %s)]", roomId).doesNotExist();
+    }
+
+    @Test
+    void shouldCheckAvailabilityInBulk() {
+        String token = generateJwtToken("system", List.of("INTERNAL", "USER"));
+        Long bookedRoom = room(TestSeedData.HOTEL_1, 201);
+        Long freeRoom = room(TestSeedData.HOTEL_1, 202);
+        LocalDate start = LocalDate.now().plusDays(60);
+        LocalDate end = LocalDate.now().plusDays(63);
+
+        webTestClient
+                .post()
+                .uri("/api/rooms/{id}/confirm-availability", bookedRoom)
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(String.format("""
+                        {
+                          "startDate": "%s",
+                          "endDate": "%s",
+                          "bookingId": "bulk-1"
+                        }
+                        """, start, end))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Boolean.class).isEqualTo(true);
+
+        // Два номера × два периода: пересекающийся и начинающийся в день выезда
+        String body = String.format("""
+                {
+                  "roomIds": [%s, %s],
+                  "ranges": [
+                    {"startDate": "%s", "endDate": "%s"},
+                    {"startDate": "%s", "endDate": "%s"}
+                  ]
+                }
+                """, bookedRoom, freeRoom, start.plusDays(1), end, end, end.plusDays(2));
+
+        webTestClient
+                .post()
+                .uri("/api/rooms/availability")
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(4)
+                .jsonPath("$[?(@.roomId == %s && @.startDate == '%s')].available", bookedRoom, start.plusDays(1).toString()).isEqualTo(false)
+                .jsonPath("$[?(@.roomId == %s && @.startDate == '%s')].available", bookedRoom, end.toString()).isEqualTo(true)
+                .jsonPath("$[?(@.roomId == %s)].available", freeRoom).isEqualTo(List.of(true, true));
+    }
+
+    @Test
+    void shouldRejectBulkAvailabilityWithoutRooms() {
+        String token = generateJwtToken("user@example.com", List.of("USER"));
+
+        webTestClient
+                .post()
+                .uri("/api/rooms/availability")
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("""
+                        {"ranges": [{"startDate": "2026-01-10", "endDate": "2026-01-12"}]}
+                        """)
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void shouldStreamHotelCalendar() {
+        String token = generateJwtToken("system", List.of("INTERNAL", "USER"));
+        Long hotelId = TestSeedData.hotelId(databaseClient, TestSeedData.HOTEL_2);
+        Long roomId = room(TestSeedData.HOTEL_2, 101);
+        LocalDate start = LocalDate.now().plusDays(80);
+
+        webTestClient
+                .post()
+                .uri("/api/rooms/{id}/confirm-availability", roomId)
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(String.format("""
+                        {
+                          "startDate": "%s",
+                          "endDate": "%s",
+                          "bookingId": "calendar-1"
+                        }
+                        """, start, start.plusDays(2)))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Boolean.class).isEqualTo(true);
+
+        List<Map> calendar = webTestClient
+                .get()
+                .uri("/api/hotels/{id}/calendar?from={from}&to={to}", hotelId, start.minusDays(1), start.plusDays(4))
+                .header("Authorization", "Bearer " + token)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Map.class)
+                .returnResult()
+                .getResponseBody();
+
+        // Пять номеров второго отеля, по строке на номер в порядке id
+        Assertions.assertNotNull(calendar);
+        Assertions.assertEquals(5, calendar.size());
+        List<Long> roomIds = calendar.stream().map(row -> ((Number) row.get("roomId")).longValue()).toList();
+        Assertions.assertEquals(roomIds.stream().sorted().toList(), roomIds);
+        Map booked = calendar.get(roomIds.indexOf(roomId));
+        Assertions.assertEquals(List.of(false, true, true, false, false), booked.get("occupied"));
+        Assertions.assertEquals(List.of(false, false, false, false, false),
+                calendar.get(roomIds.indexOf(room(TestSeedData.HOTEL_2, 102))).get("occupied"));
+    }
+
+    @Test
+    void shouldTrackDailyOccupancy() {
+        String token = generateJwtToken("system", List.of("INTERNAL", "USER", "ADMIN"));
+        Long hotelId = TestSeedData.hotelId(databaseClient, TestSeedData.HOTEL_2);
+        Long roomId = room(TestSeedData.HOTEL_2, 102);
+        LocalDate start = LocalDate.now().plusDays(100);
+        String body = String.format("""
+                {
+                  "startDate": "%s",
+                  "endDate": "%s",
+                  "bookingId": "occupancy-1"
+                }
+                """, start, start.plusDays(2));
+
+        webTestClient
+                .post()
+                .uri("/api/rooms/{id}/confirm-availability", roomId)
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Boolean.class).isEqualTo(true);
+
+        webTestClient
+                .get()
+                .uri("/api/hotels/{id}/occupancy?from={from}&to={to}", hotelId, start, start.plusDays(3))
+                .header("Authorization", "Bearer " + token)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(3)
+                .jsonPath("$[0].bookedRooms").isEqualTo(1)
+                .jsonPath("$[1].bookedRooms").isEqualTo(1)
+                .jsonPath("$[2].bookedRooms").isEqualTo(0)
+                .jsonPath("$[0].totalRooms").isEqualTo(5);
+
+        // После освобождения счётчики возвращаются к нулю
+        webTestClient
+                .post()
+                .uri("/api/rooms/{id}/release", roomId)
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isOk();
+
+        webTestClient
+                .get()
+                .uri("/api/hotels/{id}/occupancy?from={from}&to={to}", hotelId, start, start.plusDays(3))
+                .header("Authorization", "Bearer " + token)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].bookedRooms").isEqualTo(0);
+    }
+
+    @Test
+    void shouldImportCatalogAndReportDuplicatesPerLine() {
+        String token = generateJwtToken("admin@example.com", List.of("ADMIN", "USER"));
+
+        String csv = """
+                type,ref,name,address
+                hotel,imp-1,Imported Hotel,Street 1, Building 2
+                room,imp-1,301
+                room,imp-1,302
+                room,imp-1,301
+                room,unknown,401
+                """;
+
+        webTestClient
+                .post()
+                .uri("/api/hotels/import")
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.parseMediaType("text/csv"))
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(csv)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Map.class)
+                .value(results -> {
+                    Assertions.assertEquals(5, results.size());
+                    Assertions.assertEquals(List.of("CREATED", "CREATED", "CREATED", "DUPLICATE", "INVALID"),
+                            results.stream().map(result -> result.get("status")).toList());
+                    Assertions.assertEquals(5, ((Number) results.get(3).get("line")).intValue());
+                });
+    }
+
+    @Test
+    void shouldHoldRoomAndPromoteHoldToBooking() {
+        String token = generateJwtToken("system", List.of("INTERNAL", "USER"));
+        String otherToken = generateJwtToken("other@example.com", List.of("USER"));
+        Long roomId = room(TestSeedData.HOTEL_2, 201);
+        LocalDate start = LocalDate.now().plusDays(120);
+        String dates = String.format("""
+                {
+                  "startDate": "%s",
+                  "endDate": "%s",
+                  "bookingId": "hold-1",
+                  "userName": "system"
+                }
+                """, start, start.plusDays(2));
+
+        Number holdId = webTestClient
+                .post()
+                .uri("/api/rooms/{id}/holds", roomId)
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(dates)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Map.class)
+                .returnResult()
+                .getResponseBody()
+                .get("holdId") instanceof Number id ? id : null;
+        Assertions.assertNotNull(holdId);
+
+        // Пока удержание действует, даты заняты и для обычного подтверждения
+        webTestClient
+                .post()
+                .uri("/api/rooms/{id}/confirm-availability", roomId)
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(dates)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Boolean.class).isEqualTo(false);
+
+        // Чужое удержание нельзя ни снять, ни подтвердить от имени другого пользователя
+        webTestClient
+                .delete()
+                .uri("/api/rooms/{id}/holds/{holdId}", roomId, holdId.longValue())
+                .header("Authorization", "Bearer " + otherToken)
+                .exchange()
+                .expectStatus().isNotFound();
+
+        webTestClient
+                .post()
+                .uri("/api/rooms/{id}/holds/{holdId}/confirm", roomId, holdId.longValue())
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(dates.replace("\"system\"", "\"other@example.com\""))
+                .exchange()
+                .expectStatus().isNotFound();
+
+        webTestClient
+                .post()
+                .uri("/api/rooms/{id}/holds/{holdId}/confirm", roomId, holdId.longValue())
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(dates)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Boolean.class).isEqualTo(true);
+
+        // Повтор подтверждения той же бронью (потерянный ответ) не превращается в отказ
+        webTestClient
+                .post()
+                .uri("/api/rooms/{id}/holds/{holdId}/confirm", roomId, holdId.longValue())
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(dates)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Boolean.class).isEqualTo(true);
+
+        // Подтверждённое удержание больше нельзя снять как удержание
+        webTestClient
+                .delete()
+                .uri("/api/rooms/{id}/holds/{holdId}", roomId, holdId.longValue())
+                .header("Authorization", "Bearer " + token)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void shouldLimitActiveHoldsPerUser() {
+        String token = generateJwtToken("holder@example.com", List.of("USER"));
+        Long roomId = room(TestSeedData.HOTEL_2, 201);
+        LocalDate start = LocalDate.now().plusDays(300);
+        List<Long> holdIds = new ArrayList<>();
+
+        // hotel.holds.max-per-user: 5
+        for (int i = 0; i < 5; i++) {
+            holdIds.add(hold(roomId, start.plusDays(2L * i), start.plusDays(2L * i + 1), token)
+                    .expectStatus().isOk()
+                    .expectBody(Map.class)
+                    .returnResult()
+                    .getResponseBody()
+                    .get("holdId") instanceof Number id ? id.longValue() : null);
+        }
+
+        hold(roomId, start.plusDays(20), start.plusDays(21), token)
+                .expectStatus().isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+
+        // Снятое удержание освобождает место под следующее
+        webTestClient
+                .delete()
+                .uri("/api/rooms/{id}/holds/{holdId}", roomId, holdIds.get(0))
+                .header("Authorization", "Bearer " + token)
+                .exchange()
+                .expectStatus().isNoContent();
+
+        hold(roomId, start.plusDays(20), start.plusDays(21), token)
+                .expectStatus().isOk();
+    }
+
+    @Test
+    void shouldReleaseOnlyOwnBookingDates() {
+        String token = generateJwtToken("system", List.of("INTERNAL", "USER"));
+        Long roomId = room(TestSeedData.HOTEL_2, 201);
+        LocalDate start = LocalDate.now().plusDays(140);
+
+        confirm(roomId, start, start.plusDays(2), "owner-1", token);
+        confirm(roomId, start.plusDays(2), start.plusDays(4), "owner-2", token);
+
+        webTestClient
+                .post()
+                .uri("/api/rooms/{id}/release-by-booking", roomId)
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("""
+                        {"bookingId": "owner-1"}
+                        """)
+                .exchange()
+                .expectStatus().isOk();
+
+        // Даты первой брони свободны, второй — по-прежнему заняты
+        String body = String.format("""
+                {
+                  "roomIds": [%s],
+                  "ranges": [
+                    {"startDate": "%s", "endDate": "%s"},
+                    {"startDate": "%s", "endDate": "%s"}
+                  ]
+                }
+                """, roomId, start, start.plusDays(2), start.plusDays(2), start.plusDays(4));
+
+        webTestClient
+                .post()
+                .uri("/api/rooms/availability")
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].available").isEqualTo(true)
+                .jsonPath("$[1].available").isEqualTo(false);
+    }
+
+    @Test
+    void shouldPushAvailabilityEventsForHotel() {
+        String token = generateJwtToken("system", List.of("INTERNAL", "USER"));
+        Long hotelId = TestSeedData.hotelId(databaseClient, TestSeedData.HOTEL_2);
+        Long roomId = room(TestSeedData.HOTEL_2, 202);
+        LocalDate start = LocalDate.now().plusDays(160);
+
+        // Ответ потока начинается с первого события — блокируем номер уже после подписки.
+        // Блокирующий вызов WebTestClient уходит с parallel-потока таймера на boundedElastic
+        Mono.delay(Duration.ofMillis(500))
+                .publishOn(Schedulers.boundedElastic())
+                .subscribe(tick -> confirm(roomId, start, start.plusDays(1), "events-1", token));
+
+        Map event = webTestClient
+                .get()
+                .uri("/api/rooms/events?hotelId={hotelId}", hotelId)
+                .header("Authorization", "Bearer " + token)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Map.class)
+                .getResponseBody()
+                .filter(e -> roomId.equals(((Number) e.get("roomId")).longValue()))
+                .blockFirst(Duration.ofSeconds(10));
+
+        Assertions.assertNotNull(event);
+        Assertions.assertEquals("BLOCKED", event.get("type"));
+        Assertions.assertEquals(hotelId, ((Number) event.get("hotelId")).longValue());
+        Assertions.assertEquals(start.toString(), event.get("startDate"));
+        Assertions.assertEquals(start.plusDays(1).toString(), event.get("endDate"));
+    }
+
+    @Test
+    void shouldConfirmSeveralRoomsAtomically() {
+        String token = generateJwtToken("system", List.of("INTERNAL", "USER"));
+        Long first = room(TestSeedData.HOTEL_1, 101);
+        Long second = room(TestSeedData.HOTEL_1, 102);
+        LocalDate start = LocalDate.now().plusDays(200);
+        LocalDate end = start.plusDays(2);
+        confirm(second, start, end, "multi-0", token);
+
+        // Второй номер уже занят — транзакция откатывается, первый остаётся свободным
+        webTestClient
+                .post()
+                .uri("/api/rooms/confirm-availability")
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(String.format("""
+                        {
+                          "rooms": [
+                            {"roomId": %3$s, "startDate": "%1$s", "endDate": "%2$s", "bookingId": "multi-1"},
+                            {"roomId": %4$s, "startDate": "%1$s", "endDate": "%2$s", "bookingId": "multi-2"}
+                          ]
+                        }
+                        """, start, end, second, first))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].status").isEqualTo("CONFLICT")
+                .jsonPath("$[1].status").isEqualTo("ROLLED_BACK");
+
+        webTestClient
+                .post()
+                .uri("/api/rooms/availability")
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(String.format("""
+                        {"roomIds": [%s], "ranges": [{"startDate": "%s", "endDate": "%s"}]}
+                        """, first, start, end))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].available").isEqualTo(true);
+
+        // На следующие даты свободны оба номера — блокируются вместе
+        webTestClient
+                .post()
+                .uri("/api/rooms/confirm-availability")
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(String.format("""
+                        {
+                          "rooms": [
+                            {"roomId": %3$s, "startDate": "%1$s", "endDate": "%2$s", "bookingId": "multi-3"},
+                            {"roomId": %4$s, "startDate": "%1$s", "endDate": "%2$s", "bookingId": "multi-4"}
+                          ]
+                        }
+                        """, end, end.plusDays(2), second, first))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].status").isEqualTo("CONFIRMED")
+                .jsonPath("$[1].status").isEqualTo("CONFIRMED");
+    }
+
+    @Test
+    void shouldConfirmRepeatedRequestOfSameBooking() {
+        String token = generateJwtToken("system", List.of("INTERNAL", "USER"));
+        Long roomId = room(TestSeedData.HOTEL_1, 101);
+        LocalDate start = LocalDate.now().plusDays(260);
+        LocalDate end = start.plusDays(2);
+
+        // Повтор подтверждения той же брони (потерянный ответ) находит её интервал и отвечает true
+        confirm(roomId, start, end, "retry-1", token);
+        confirm(roomId, start, end, "retry-1", token);
+
+        // Другая бронь на те же даты по-прежнему получает отказ
+        webTestClient
+                .post()
+                .uri("/api/rooms/{id}/confirm-availability", roomId)
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(String.format("""
+                        {"startDate": "%s", "endDate": "%s", "bookingId": "retry-2"}
+                        """, start, end))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Boolean.class).isEqualTo(false);
+    }
+
+    private Long room(String hotelName, int number) {
+        return TestSeedData.roomId(databaseClient, hotelName, number);
+    }
+
+    private void confirm(Long roomId, LocalDate start, LocalDate end, String bookingId, String token) {
+        webTestClient
+                .post()
+                .uri("/api/rooms/{id}/confirm-availability", roomId)
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(String.format("""
+                        {
+                          "startDate": "%s",
+                          "endDate": "%s",
+                          "bookingId": "%s"
+                        }
+                        """, start, end, bookingId))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Boolean.class).isEqualTo(true);
+    }
+
+    private WebTestClient.ResponseSpec hold(Long roomId, LocalDate start, LocalDate end, String token) {
+        return webTestClient
+                .post()
+                .uri("/api/rooms/{id}/holds", roomId)
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(String.format("""
+                        {
+                          "startDate": "%s",
+                          "endDate": "%s"
+                        }
+                        """, start, end))
+                .exchange();
+    }
+
     private String generateJwtToken(String username, List<String> roles) {
         String secret = "a-string-secret-at-least-256-bits-long"; // как в application.yml
         SecretKey key = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
@@ -0,0 +1,24 @@
+package home.work.hotel;
+
+import io.r2dbc.proxy.core.QueryExecutionInfo;
+import io.r2dbc.proxy.listener.ProxyExecutionListener;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Число SQL-операторов, выполненных через фабрику соединений; BEGIN/COMMIT сюда не входят
+public class StatementCounter implements ProxyExecutionListener {
+    private final AtomicInteger statements = new AtomicInteger();
+
+    @Override
+    public void afterQuery(QueryExecutionInfo execInfo) {
+        statements.addAndGet(execInfo.getQueries().size());
+    }
+
+    public void reset() {
+        statements.set(0);
+    }
+
+    public int get() {
+        return statements.get();
+    }
+}
@@ -0,0 +1,23 @@
+package home.work.hotel;
+
+import org.springframework.boot.autoconfigure.r2dbc.ProxyConnectionFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Счётчик SQL-операторов для тестов. Обычная @Configuration, а не @TestConfiguration: её подхватывает
+ * сканирование компонентов, и у всех тестовых классов остаётся один общий контекст. Каждый новый контекст
+ * заново запускал бы DataInitializer над общей in-memory H2 и менял id засеянных данных.
+ */
+@Configuration
+public class StatementCounterConfiguration {
+    @Bean
+    public StatementCounter statementCounter() {
+        return new StatementCounter();
+    }
+
+    @Bean
+    public ProxyConnectionFactoryCustomizer statementCounterCustomizer(StatementCounter statementCounter) {
+        return builder -> builder.listener(statementCounter);
+    }
+}
@@ -0,0 +1,43 @@
+package home.work.hotel;
+
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+// Данные DataInitializer: id назначает БД при каждом заполнении, поэтому тесты ищут их по отелю и номеру комнаты
+public final class TestSeedData {
+    public static final String HOTEL_1 = "Hotel 1";
+    public static final String HOTEL_2 = "Hotel 2";
+
+    private static final Duration SEED_TIMEOUT = Duration.ofSeconds(10);
+
+    private TestSeedData() {
+    }
+
+    public static Long hotelId(DatabaseClient databaseClient, String hotelName) {
+        return await(databaseClient.sql("SELECT id FROM hotels WHERE name = :name")
+                .bind("name", hotelName)
+                .map((row, metadata) -> row.get("id", Long.class))
+                .one());
+    }
+
+    public static Long roomId(DatabaseClient databaseClient, String hotelName, int number) {
+        return await(databaseClient.sql("""
+                        SELECT r.id FROM rooms r
+                        JOIN hotels h ON h.id = r.hotel_id
+                        WHERE h.name = :name AND r.number = :number
+                        """)
+                .bind("name", hotelName)
+                .bind("number", number)
+                .map((row, metadata) -> row.get("id", Long.class))
+                .one());
+    }
+
+    // Заполнение идёт асинхронно после старта контекста — ждём, пока строка появится
+    private static Long await(Mono<Long> lookup) {
+        return lookup
+                .repeatWhenEmpty(attempts -> attempts.delayElements(Duration.ofMillis(100)))
+                .block(SEED_TIMEOUT);
+    }
+}
@@ -0,0 +1,160 @@
+package home.work.hotel.services;
+
+import home.work.hotel.StatementCounter;
+import home.work.hotel.TestSeedData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.function.Supplier;
+
+/**
+ * Блокировка дат интервалом (текущий путь RoomService.confirmAvailability) против прежней модели
+ * «одна строка INSERT на ночь» для проживания в 1, 7 и 30 ночей. Выполненные SQL-операторы считает
+ * слушатель r2dbc-proxy (StatementCounter). Замер задержек помечен тегом benchmark и в обычный прогон
+ * не входит: mvn test -Pbenchmark.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureWebTestClient
+public class BlockDatesBenchmarkTests {
+    private static final Logger log = LoggerFactory.getLogger(BlockDatesBenchmarkTests.class);
+
+    private static final int[] NIGHTS = {1, 7, 30};
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 20;
+
+    @Autowired
+    private RoomService roomService;
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @Autowired
+    private TransactionalOperator transactionalOperator;
+
+    @Autowired
+    private StatementCounter statementCounter;
+
+    private Long roomId;
+
+    @BeforeEach
+    void setUp() {
+        roomId = TestSeedData.roomId(databaseClient, TestSeedData.HOTEL_1, 102);
+        // Прежняя модель хранения — только для сравнения
+        databaseClient.sql("""
+                CREATE TABLE IF NOT EXISTS bench_blocked_dates (
+                    room_id BIGINT NOT NULL,
+                    blocked_date DATE NOT NULL,
+                    UNIQUE (room_id, blocked_date)
+                )
+                """).then().block();
+    }
+
+    @AfterEach
+    void tearDown() {
+        databaseClient.sql("DROP TABLE IF EXISTS bench_blocked_dates").then().block();
+    }
+
+    @Test
+    void rangeBlockingShouldKeepStatementsAndRowsFlat() {
+        LocalDate base = LocalDate.now().plusYears(5);
+        Integer oneNightStatements = null;
+
+        for (int nights : NIGHTS) {
+            LocalDate start = base;
+            LocalDate end = base.plusDays(nights);
+
+            statementCounter.reset();
+            Assertions.assertEquals(Boolean.TRUE, roomService.confirmAvailability(roomId, start, end, "bench").block());
+            int rangeStatements = statementCounter.get();
+            long rangeRows = countRows("SELECT COUNT(*) AS count FROM room_blocked_ranges WHERE room_id = :roomId AND start_date >= :start", start);
+            roomService.releaseRoom(roomId, start, end).block();
+
+            statementCounter.reset();
+            blockPerNight(start, end).block();
+            int perNightStatements = statementCounter.get();
+            long perNightRows = countRows("SELECT COUNT(*) AS count FROM bench_blocked_dates WHERE room_id = :roomId AND blocked_date >= :start", start);
+            clearPerNight().block();
+
+            if (oneNightStatements == null) {
+                oneNightStatements = rangeStatements;
+            }
+            Assertions.assertTrue(rangeStatements > 0, "Statement listener must see the range path");
+            Assertions.assertEquals(oneNightStatements, rangeStatements,
+                    "Range blocking must not issue more statements for a longer stay: " + nights + " nights");
+            Assertions.assertEquals(1, rangeRows, "Range storage must keep one row per stay");
+            Assertions.assertEquals(nights, perNightStatements);
+            Assertions.assertEquals(nights, perNightRows);
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void compareRangeAndPerNightLatency() {
+        LocalDate base = LocalDate.now().plusYears(6);
+
+        for (int nights : NIGHTS) {
+            LocalDate start = base;
+            LocalDate end = base.plusDays(nights);
+
+            long rangeMicros = measure(() -> roomService.confirmAvailability(roomId, start, end, "bench").then(),
+                    () -> roomService.releaseRoom(roomId, start, end));
+            long perNightMicros = measure(() -> blockPerNight(start, end), this::clearPerNight);
+
+            log.info("Blocking latency | nights={}, rangeAvgUs={}, perNightAvgUs={}", nights, rangeMicros, perNightMicros);
+            Assertions.assertTrue(rangeMicros > 0 && perNightMicros > 0);
+        }
+    }
+
+    private long measure(Supplier<Mono<Void>> block, Supplier<Mono<Void>> cleanup) {
+        for (int i = 0; i < WARMUP; i++) {
+            block.get().then(cleanup.get()).block();
+        }
+        long total = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long started = System.nanoTime();
+            block.get().block();
+            total += System.nanoTime() - started;
+            cleanup.get().block();
+        }
+        return total / ITERATIONS / 1_000;
+    }
+
+    // Прежний путь: отдельный INSERT на каждую ночь в одной транзакции
+    private Mono<Void> blockPerNight(LocalDate start, LocalDate end) {
+        return Flux.fromStream(start.datesUntil(end))
+                .flatMap(date -> databaseClient.sql("INSERT INTO bench_blocked_dates (room_id, blocked_date) VALUES (:roomId, :date)")
+                        .bind("roomId", roomId)
+                        .bind("date", date)
+                        .fetch()
+                        .rowsUpdated())
+                .as(transactionalOperator::transactional)
+                .then();
+    }
+
+    private Mono<Void> clearPerNight() {
+        return databaseClient.sql("DELETE FROM bench_blocked_dates").then();
+    }
+
+    private long countRows(String sql, LocalDate start) {
+        return databaseClient.sql(sql)
+                .bind("roomId", roomId)
+                .bind("start", start)
+                .fetch()
+                .one()
+                .map(row -> ((Number) row.get("count")).longValue())
+                .block();
+    }
+}
@@ -0,0 +1,95 @@
+package home.work.hotel.services;
+
+import home.work.hotel.TestSeedData;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Sinks;
+
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureWebTestClient
+public class BlockedRangeCompactorTests {
+
+    @Autowired
+    private BlockedRangeCompactor compactor;
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @Autowired
+    private RoomWriteQueue writeQueue;
+
+    private Long roomId;
+
+    @BeforeEach
+    void setUp() {
+        roomId = TestSeedData.roomId(databaseClient, TestSeedData.HOTEL_1, 103);
+    }
+
+    @Test
+    void shouldMovePastRangesToArchiveAndKeepFutureOnes() {
+        LocalDate today = LocalDate.now();
+        insertRange(today.minusYears(3), today.minusYears(3).plusDays(2));
+        insertRange(today.minusYears(3).plusDays(5), today.minusYears(3).plusDays(6));
+        insertRange(today.plusYears(3), today.plusYears(3).plusDays(2));
+
+        Long moved = compactor.compact(today.minusYears(2)).block();
+
+        Assertions.assertEquals(2L, moved);
+        Assertions.assertEquals(2L, count("SELECT COUNT(*) AS count FROM room_blocked_ranges_archive WHERE room_id = :roomId"));
+        Assertions.assertEquals(1L, count("SELECT COUNT(*) AS count FROM room_blocked_ranges WHERE room_id = :roomId"));
+
+        databaseClient.sql("DELETE FROM room_blocked_ranges WHERE room_id = :roomId").bind("roomId", roomId).then().block();
+    }
+
+    @Test
+    void shouldNotArchiveRangeReleasedWhileBatchWaitsInQueue() throws Exception {
+        roomId = TestSeedData.roomId(databaseClient, TestSeedData.HOTEL_2, 103);
+        LocalDate past = LocalDate.now().minusYears(4);
+        insertRange(past, past.plusDays(2));
+        insertRange(past.plusDays(5), past.plusDays(6));
+
+        // Номер занят другой задачей очереди: пачка уже выбрана, но ждёт своей очереди
+        Sinks.Empty<Void> blocker = Sinks.empty();
+        writeQueue.submit(roomId, blocker.asMono()).subscribe();
+        CompletableFuture<Long> moved = compactor.compact(past.plusYears(1)).toFuture();
+        Thread.sleep(500);
+
+        // Пока пачка ждёт, первый интервал снимают
+        databaseClient.sql("DELETE FROM room_blocked_ranges WHERE room_id = :roomId AND start_date = :start")
+                .bind("roomId", roomId)
+                .bind("start", past)
+                .then()
+                .block();
+        blocker.tryEmitEmpty();
+
+        Assertions.assertEquals(1L, moved.get(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(1L, count("SELECT COUNT(*) AS count FROM room_blocked_ranges_archive WHERE room_id = :roomId"));
+        Assertions.assertEquals(0L, count("SELECT COUNT(*) AS count FROM room_blocked_ranges WHERE room_id = :roomId"));
+    }
+
+    private void insertRange(LocalDate start, LocalDate end) {
+        databaseClient.sql("INSERT INTO room_blocked_ranges (room_id, start_date, end_date) VALUES (:roomId, :start, :end)")
+                .bind("roomId", roomId)
+                .bind("start", start)
+                .bind("end", end)
+                .then()
+                .block();
+    }
+
+    private long count(String sql) {
+        return databaseClient.sql(sql)
+                .bind("roomId", roomId)
+                .map((row, metadata) -> row.get("count", Long.class))
+                .one()
+                .block();
+    }
+}
@@ -0,0 +1,74 @@
+package home.work.hotel.services;
+
+import home.work.hotel.dto.HotelResponse;
+import home.work.hotel.dto.RoomResponse;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDate;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureWebTestClient
+public class CatalogCacheTests {
+    private static final String HOTEL_NAME = "Catalog Cache Hotel";
+
+    @Autowired
+    private HotelService hotelService;
+
+    @Autowired
+    private RoomService roomService;
+
+    @Autowired
+    private ImportService importService;
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @Test
+    void readsShouldSeeEveryCatalogChange() {
+        // Прогрев кэша
+        Assertions.assertTrue(hotelService.getHotels().filter(hotel -> HOTEL_NAME.equals(hotel.getName())).collectList().block().isEmpty());
+        roomService.getRooms().collectList().block();
+
+        // Импорт сбрасывает список отелей и номера своего отеля
+        importService.importLines(Flux.just(
+                "hotel,cache-1," + HOTEL_NAME + ",Cache street 1",
+                "room,cache-1,701",
+                "room,cache-1,702"), true).collectList().block();
+        HotelResponse hotel = hotelService.getHotels()
+                .filter(h -> HOTEL_NAME.equals(h.getName()))
+                .single()
+                .block();
+        RoomResponse room701 = room(hotel.getId(), 701);
+        RoomResponse room702 = room(hotel.getId(), 702);
+        Assertions.assertTrue(room701.getAvailable());
+        Assertions.assertEquals(0, room702.getBooked());
+
+        // Запись в обход сервиса кэш не сбрасывает: чтение идёт из кэша
+        databaseClient.sql("UPDATE rooms SET available = FALSE WHERE id = :id").bind("id", room701.getId()).then().block();
+        Assertions.assertTrue(room(hotel.getId(), 701).getAvailable(), "Catalog must be served from cache");
+
+        // setAvailable сбрасывает отель номера
+        roomService.setAvailable(room701.getId(), false).block();
+        Assertions.assertFalse(room(hotel.getId(), 701).getAvailable());
+        roomService.setAvailable(room701.getId(), true).block();
+        Assertions.assertTrue(room(hotel.getId(), 701).getAvailable());
+
+        // Подтверждение брони меняет times_booked и тоже сбрасывает отель
+        LocalDate start = LocalDate.now().plusYears(3);
+        Assertions.assertEquals(Boolean.TRUE, roomService.confirmAvailability(room702.getId(), start, start.plusDays(2), "cache-1").block());
+        Assertions.assertEquals(1, room(hotel.getId(), 702).getBooked());
+    }
+
+    private RoomResponse room(Long hotelId, int number) {
+        return roomService.getRooms()
+                .filter(room -> hotelId.equals(room.getHotelId()) && room.getNumber() == number)
+                .single()
+                .block();
+    }
+}
@@ -0,0 +1,167 @@
+package home.work.hotel.services;
+
+import home.work.hotel.TestJwtUtil;
+import home.work.hotel.TestSeedData;
+import home.work.hotel.exceptions.RoomQueueFullException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureWebTestClient
+public class RoomWriteQueueTests {
+
+    @Autowired
+    private RoomWriteQueue writeQueue;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @Value("${hotel.write-queue.max-pending:256}")
+    private int maxPending;
+
+    @Test
+    void shouldRunChangesOfOneRoomInOrderAndOtherRoomsInParallel() throws Exception {
+        // Четыре полосы: номера 1 и 5 делят полосу, номер 2 — в другой
+        RoomWriteQueue queue = new RoomWriteQueue(4, 16);
+        List<String> order = new CopyOnWriteArrayList<>();
+        Sinks.Empty<Void> blocker = Sinks.empty();
+
+        CompletableFuture<Void> first = queue.submit(1L, blocker.asMono().then(record(order, "room1-first"))).toFuture();
+        CompletableFuture<Void> second = queue.submit(1L, record(order, "room1-second")).toFuture();
+        CompletableFuture<Void> sameStripe = queue.submit(5L, record(order, "room5")).toFuture();
+        CompletableFuture<Void> otherStripe = queue.submit(2L, record(order, "room2")).toFuture();
+
+        otherStripe.get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(List.of("room2"), order, "Other stripe must not wait for a blocked room");
+        Assertions.assertFalse(second.isDone(), "Second change of the room must wait for the first");
+
+        blocker.tryEmitEmpty();
+        CompletableFuture.allOf(first, second, sameStripe).get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(List.of("room2", "room1-first", "room1-second", "room5"), order);
+    }
+
+    @Test
+    void submitAllShouldTakeItsTurnInEveryStripeAtOnce() throws Exception {
+        RoomWriteQueue queue = new RoomWriteQueue(4, 16);
+        List<String> order = new CopyOnWriteArrayList<>();
+        Sinks.Empty<Void> blocker1 = Sinks.empty();
+        Sinks.Empty<Void> blocker2 = Sinks.empty();
+
+        CompletableFuture<Void> busy1 = queue.submit(1L, blocker1.asMono()).toFuture();
+        CompletableFuture<Void> busy2 = queue.submit(2L, blocker2.asMono()).toFuture();
+        CompletableFuture<Void> all = queue.submitAll(List.of(2L, 1L), record(order, "all")).toFuture();
+        CompletableFuture<Void> after1 = queue.submit(1L, record(order, "room1")).toFuture();
+        CompletableFuture<Void> after2 = queue.submit(2L, record(order, "room2")).toFuture();
+
+        // Освобождена только одна полоса: задача по двум номерам ждёт вторую, поставленные после неё — её
+        blocker1.tryEmitEmpty();
+        busy1.get(5, TimeUnit.SECONDS);
+        Thread.sleep(200);
+        Assertions.assertTrue(order.isEmpty(), "submitAll must wait for every stripe it was queued in");
+
+        blocker2.tryEmitEmpty();
+        CompletableFuture.allOf(busy2, all, after1, after2).get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals("all", order.get(0), "Changes queued after submitAll must run after it");
+        Assertions.assertEquals(3, order.size());
+    }
+
+    @Test
+    void submitAllInOppositeOrderShouldNotDeadlock() throws Exception {
+        RoomWriteQueue queue = new RoomWriteQueue(4, 1024);
+        List<Long> forward = List.of(1L, 2L, 3L);
+        List<Long> backward = List.of(3L, 2L, 1L);
+
+        Long done = Flux.range(0, 200)
+                .flatMap(i -> Mono.defer(() -> queue.submitAll(i % 2 == 0 ? forward : backward, Mono.just(1L)))
+                        .subscribeOn(Schedulers.parallel()))
+                .count()
+                .toFuture()
+                .get(10, TimeUnit.SECONDS);
+
+        Assertions.assertEquals(200L, done);
+    }
+
+    @Test
+    void shouldRejectChangesOverMaxPending() throws Exception {
+        RoomWriteQueue queue = new RoomWriteQueue(4, 2);
+        Sinks.Empty<Void> blocker = Sinks.empty();
+        CompletableFuture<Void> first = queue.submit(1L, blocker.asMono()).toFuture();
+        CompletableFuture<Void> second = queue.submit(1L, Mono.<Void>empty()).toFuture();
+
+        ExecutionException full = Assertions.assertThrows(ExecutionException.class,
+                () -> queue.submit(1L, Mono.just(1)).toFuture().get(5, TimeUnit.SECONDS));
+        Assertions.assertInstanceOf(RoomQueueFullException.class, full.getCause());
+
+        // Отказ submitAll не занимает места в остальных полосах
+        ExecutionException fullAll = Assertions.assertThrows(ExecutionException.class,
+                () -> queue.submitAll(List.of(2L, 1L), Mono.just(1)).toFuture().get(5, TimeUnit.SECONDS));
+        Assertions.assertInstanceOf(RoomQueueFullException.class, fullAll.getCause());
+        Assertions.assertEquals(1, queue.submit(2L, Mono.just(1)).toFuture().get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, queue.submit(2L, Mono.just(1)).toFuture().get(5, TimeUnit.SECONDS));
+
+        blocker.tryEmitEmpty();
+        CompletableFuture.allOf(first, second).get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(1, queue.submit(1L, Mono.just(1)).toFuture().get(5, TimeUnit.SECONDS),
+                "Stripe must accept changes again once the queue drains");
+    }
+
+    @Test
+    void shouldAnswer503WhenRoomQueueIsFull() throws Exception {
+        Long roomId = TestSeedData.roomId(databaseClient, TestSeedData.HOTEL_2, 202);
+        Sinks.Empty<Void> blocker = Sinks.empty();
+        List<CompletableFuture<Void>> queued = Flux.range(0, maxPending)
+                .map(i -> writeQueue.submit(roomId, blocker.asMono()).toFuture())
+                .collectList()
+                .block();
+        LocalDate start = LocalDate.now().plusYears(2);
+        String token = TestJwtUtil.generateToken("admin@example.com", List.of("INTERNAL", "USER"));
+
+        try {
+            webTestClient.post()
+                    .uri("/api/rooms/{id}/confirm-availability", roomId)
+                    .header("Authorization", "Bearer " + token)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(String.format("""
+                            {
+                              "startDate": "%s",
+                              "endDate": "%s",
+                              "bookingId": "queue-full-1",
+                              "requestId": "req-queue-full-1"
+                            }
+                            """, start, start.plusDays(1)))
+                    .exchange()
+                    .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+                    .expectBody()
+                    .jsonPath("$.error").isEqualTo("Room Queue Full");
+        } finally {
+            blocker.tryEmitEmpty();
+            CompletableFuture.allOf(queued.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static Mono<Void> record(List<String> order, String name) {
+        return Mono.fromRunnable(() -> order.add(name));
+    }
+}